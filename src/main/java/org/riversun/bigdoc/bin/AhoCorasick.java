@@ -0,0 +1,188 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton to find multiple sequences of bytes in a single
+ * pass<br>
+ * <br>
+ * The automaton is built as a complete DFA(one transition per state and byte
+ * value), so scanning costs one table lookup per byte regardless of the
+ * number of sequences. Instances are immutable and can be shared by threads.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class AhoCorasick {
+
+  private static final int ROOT = 0;
+
+  // transitions[state << 8 | byte] = next state
+  private final int[] transitions;
+
+  // indexes of the sequences that end at the state,null if nothing
+  private final int[][] outputs;
+
+  private final int[] lengths;
+
+  private final int maxLength;
+
+  AhoCorasick(List<byte[]> searchBytesList) {
+
+    if (searchBytesList.isEmpty()) {
+      throw new RuntimeException("No sequence of bytes to search.");
+    }
+
+    final int numOfPatterns = searchBytesList.size();
+
+    lengths = new int[numOfPatterns];
+
+    // build trie
+    final List<int[]> trie = new ArrayList<int[]>();
+    final List<List<Integer>> outputList = new ArrayList<List<Integer>>();
+
+    trie.add(newNode());
+    outputList.add(new ArrayList<Integer>());
+
+    int maxLen = 0;
+
+    for (int patternIndex = 0; patternIndex < numOfPatterns; patternIndex++) {
+
+      final byte[] pattern = searchBytesList.get(patternIndex);
+
+      if (pattern.length == 0) {
+        throw new RuntimeException("Empty sequence of bytes cannot be searched.");
+      }
+
+      lengths[patternIndex] = pattern.length;
+      maxLen = Math.max(maxLen, pattern.length);
+
+      int state = ROOT;
+      for (byte b : pattern) {
+        final int c = b & 0xff;
+        if (trie.get(state)[c] < 0) {
+          trie.get(state)[c] = trie.size();
+          trie.add(newNode());
+          outputList.add(new ArrayList<Integer>());
+        }
+        state = trie.get(state)[c];
+      }
+      outputList.get(state).add(patternIndex);
+    }
+
+    maxLength = maxLen;
+
+    final int numOfStates = trie.size();
+
+    transitions = new int[numOfStates << 8];
+    outputs = new int[numOfStates][];
+
+    final int[] failure = new int[numOfStates];
+
+    // build DFA in breadth first order,so that the failure state is always
+    // completed before it is referenced
+    final LinkedList<Integer> queue = new LinkedList<Integer>();
+
+    for (int c = 0; c < 256; c++) {
+      final int child = trie.get(ROOT)[c];
+      if (child < 0) {
+        transitions[(ROOT << 8) | c] = ROOT;
+      } else {
+        transitions[(ROOT << 8) | c] = child;
+        failure[child] = ROOT;
+        queue.add(child);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+
+      final int state = queue.removeFirst();
+
+      // inherit the outputs of the failure state(dictionary suffix)
+      outputList.get(state).addAll(outputList.get(failure[state]));
+
+      for (int c = 0; c < 256; c++) {
+        final int child = trie.get(state)[c];
+        if (child < 0) {
+          transitions[(state << 8) | c] = transitions[(failure[state] << 8) | c];
+        } else {
+          transitions[(state << 8) | c] = child;
+          failure[child] = transitions[(failure[state] << 8) | c];
+          queue.add(child);
+        }
+      }
+    }
+
+    for (int state = 0; state < numOfStates; state++) {
+      final List<Integer> out = outputList.get(state);
+      if (!out.isEmpty()) {
+        outputs[state] = new int[out.size()];
+        for (int i = 0; i < out.size(); i++) {
+          outputs[state][i] = out.get(i);
+        }
+      }
+    }
+  }
+
+  private static int[] newNode() {
+    final int[] node = new int[256];
+    Arrays.fill(node, -1);
+    return node;
+  }
+
+  int initialState() {
+    return ROOT;
+  }
+
+  int nextState(int state, byte b) {
+    return transitions[(state << 8) | (b & 0xff)];
+  }
+
+  /**
+   * Returns indexes of the sequences that end at the state
+   * 
+   * @param state
+   * @return null if no sequence ends at the state
+   */
+  int[] outputs(int state) {
+    return outputs[state];
+  }
+
+  int numOfPatterns() {
+    return lengths.length;
+  }
+
+  int length(int patternIndex) {
+    return lengths[patternIndex];
+  }
+
+  int maxLength() {
+    return maxLength;
+  }
+}
@@ -0,0 +1,84 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+/**
+ * SearchEngine that selects the suitable engine from the length of the
+ * sequence of bytes<br>
+ * <br>
+ * This is the default engine of {@link BinFileSearcher} and
+ * {@link BigFileSearcher}.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class AutoSearchEngine implements SearchEngine {
+
+  /**
+   * Sequences shorter than this are scanned word by word by
+   * {@link SwarSearchEngine}
+   */
+  public static final int MIN_LENGTH_FOR_SKIP = 12;
+
+  /**
+   * Sequences shorter than this are scanned vector by vector when the SIMD
+   * engine of the multi-release jar is available
+   */
+  public static final int MIN_LENGTH_FOR_SKIP_WITH_SIMD = 32;
+
+  /**
+   * Sequences longer than this are searched by Two-Way algorithm to keep the
+   * worst case linear
+   */
+  public static final int MAX_LENGTH_FOR_HORSPOOL = 256;
+
+  private final SearchEngine swarSearchEngine = new SwarSearchEngine();
+  private final SearchEngine simdSearchEngine = SimdSupport.newSearchEngine();
+  private final SearchEngine horspoolSearchEngine = new HorspoolSearchEngine();
+  private final SearchEngine twoWaySearchEngine = new TwoWaySearchEngine();
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return select(BytePattern.checkSearchBytes(searchBytes).length).compile(searchBytes);
+  }
+
+  /**
+   * Returns the engine suitable for the specified length of the sequence of
+   * bytes
+   * 
+   * @param lengthOfSearchBytes
+   * @return
+   */
+  public SearchEngine select(int lengthOfSearchBytes) {
+    if (simdSearchEngine != null && lengthOfSearchBytes < MIN_LENGTH_FOR_SKIP_WITH_SIMD) {
+      return simdSearchEngine;
+    } else if (lengthOfSearchBytes < MIN_LENGTH_FOR_SKIP) {
+      return swarSearchEngine;
+    } else if (lengthOfSearchBytes <= MAX_LENGTH_FOR_HORSPOOL) {
+      return horspoolSearchEngine;
+    } else {
+      return twoWaySearchEngine;
+    }
+  }
+}
@@ -24,16 +24,43 @@
 package org.riversun.bigdoc.bin;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
 
 import org.riversun.bigdoc.bin.BinFileSearcher.BinFileProgressListener;
 
@@ -41,6 +68,15 @@ import org.riversun.bigdoc.bin.BinFileSearcher.BinFileProgressListener;
  * 
  * Search bytes from big file<br>
  * Available for giga-bytes order file <br>
+ * <br>
+ * An instance can run many searches at the same time.The settings are read
+ * when each search starts and the state of a search is kept by the search
+ * itself,so the searches do not affect each other.<br>
+ * <br>
+ * #cancel stops all the searches of the instance.To stop only one of them,
+ * start it with a SearchCondition and call #cancel(SearchCondition).The
+ * overloads taking a File(like #indexOf or #searchBigFile(File, byte[]))
+ * create their own condition,so they can only be stopped by #cancel.
  * 
  * @author Tom Misawa (riversun.org@gmail.com)
  */
@@ -58,9 +94,7 @@ public class BigFileSearcher {
     public void onProgress(int workerNumber, int workerSize, List<Long> pointerList, float progress);
   }
 
-  private ProgressCache progressCache;
-
-  private boolean useOptimization = true;
+  private volatile boolean useOptimization = true;
 
   /**
    * Use memory and threading optimization<br>
@@ -73,8 +107,6 @@ public class BigFileSearcher {
     this.useOptimization = enabled;
   }
 
-  private final BinFileSearcher binFileSearcher = new BinFileSearcher();
-
   // max number of thread
   public static final int DEFAULT_MAX_NUM_OF_THREADS = 24;
 
@@ -84,36 +116,87 @@ public class BigFileSearcher {
   // Unit size when split loading
   public static final int DEFAULT_BLOCK_SIZE = 10 * 1024 * 1024;
 
-  private int bufferSizePerWorker = BinFileSearcher.DEFAULT_BUFFER_SIZE;
+  /**
+   * Upper limit of the number of chunks a search range is split into<br>
+   * A block size smaller than (size of the range / MAX_NUM_OF_CHUNKS) is
+   * raised to it,so a tiny block size does not create a task for every few
+   * bytes of a big file.
+   */
+  public static final long MAX_NUM_OF_CHUNKS = 10000;
+
+  // Number of blocks per worker when the optimization divides a big file
+  private static final int OPTIMIZED_NUM_OF_BLOCKS_PER_WORKER = 8;
+
+  // Number of blocks searched ahead of the consumer per thread in streaming
+  public static final int STREAMING_BLOCKS_PER_THREAD = 2;
+
+  private volatile int bufferSizePerWorker = BinFileSearcher.DEFAULT_BUFFER_SIZE;
 
   /**
-   * Number of threads used at the same time in one search
+   * Number of threads used at the same time in one search<br>
+   * Only shown by #_showProfile,the sub threads are no longer used.
    */
-  private int subThreadSize = BinFileSearcher.DEFAULT_SUB_THREAD_SIZE;
+  private int subThreadSize = 32;
 
   /**
-   * The size of the window used to scan memory
+   * The size of the window used to scan memory<br>
+   * Only shown by #_showProfile,the sub threads are no longer used.
    */
-  private int subBufferSize = BinFileSearcher.DEFAULT_SUB_BUFFER_SIZE;
+  private int subBufferSize = 512;
 
   /**
    * Size per unit when divide loading big sized file into multiple pieces<br>
    */
-  private long blockSize = DEFAULT_BLOCK_SIZE;
+  private volatile long blockSize = DEFAULT_BLOCK_SIZE;
+
+  private volatile int maxNumOfThreads = DEFAULT_MAX_NUM_OF_THREADS;
+
+  /**
+   * Engine to find the sequence of bytes in each worker
+   */
+  private volatile SearchEngine searchEngine = new AutoSearchEngine();
+
+  /**
+   * Executor shared by the searches,or null to create a thread pool per
+   * search
+   */
+  private volatile ExecutorService executorService;
+
+  /**
+   * Factory of virtual threads,or null if they are not available on this
+   * runtime
+   */
+  private static final ThreadFactory VIRTUAL_THREAD_FACTORY = VirtualThreadSupport.newThreadFactory();
+
+  private volatile boolean useVirtualThreads;
+
+  /**
+   * Cache of the open files and the mapped regions shared by the searches,or
+   * null to open the file in each worker
+   */
+  private volatile FileMappingCache fileMappingCache;
 
-  private int maxNumOfThreads = DEFAULT_MAX_NUM_OF_THREADS;
+  /**
+   * How the workers read the file
+   */
+  private volatile IoBackend ioBackend = IoBackend.MMAP;
 
-  private OnProgressListener onProgressListener;
-  private OnRealtimeResultListener onRealtimeResultListener;
+  /**
+   * Searches running on this instance
+   */
+  private final Set<SearchContext> activeSearches = Collections.newSetFromMap(new ConcurrentHashMap<SearchContext, Boolean>());
 
-  private long _profile_lastStartTime;
-  private long _profile_lastEndTime;
+  private volatile long _profile_lastStartTime;
+  private volatile long _profile_lastEndTime;
 
   /**
    * Set size per unit when divide loading big sized file into multiple pieces<br>
    * <br>
    * In order to make this method effective,call setUseOptimization(false) to
    * turn off the optimization.<br>
+   * A search range is split into at most {@link #MAX_NUM_OF_CHUNKS} blocks,so
+   * the blocks are larger than this size if the range is larger than
+   * blockSize * MAX_NUM_OF_CHUNKS.
    * 
    * @param blockSize
    *                  size per unit when divide loading big sized file
@@ -155,7 +238,10 @@ public class BigFileSearcher {
    * 
    * @param subThreadSize
    *                      number of threads for sub threads(concurrency)
+   * @deprecated each worker now scans its buffer by {@link SearchEngine} in
+   *             its own thread, so this value is ignored.
    */
+  @Deprecated
   public void setSubThreadSize(int subThreadSize) {
     this.subThreadSize = subThreadSize;
   }
@@ -167,11 +253,156 @@ public class BigFileSearcher {
    * 
    * @param subBufferSize
    *                      size(bytes) of the window
+   * @deprecated each worker now scans its buffer by {@link SearchEngine} in
+   *             its own thread, so this value is ignored.
    */
+  @Deprecated
   public void setSubBufferSize(int subBufferSize) {
     this.subBufferSize = subBufferSize;
   }
 
+  /**
+   * Set the engine to find the sequence of bytes in each worker<br>
+   * (default is {@link AutoSearchEngine})
+   * 
+   * @param searchEngine
+   *                     engine to be used
+   */
+  public void setSearchEngine(SearchEngine searchEngine) {
+    this.searchEngine = searchEngine;
+  }
+
+  /**
+   * Set the executor to run the workers of every search<br>
+   * <br>
+   * The executor is reused across the searches and is not shut down by this
+   * searcher.The number of its threads is the concurrency budget shared by
+   * all the searches,so #setMaxNumOfThreads is not used while an executor is
+   * set.Any ExecutorService including ForkJoinPool can be used.<br>
+   * (default is null,a new thread pool is created for each search)
+   * 
+   * @param executorService
+   *                        executor to be used,or null
+   */
+  public void setExecutorService(ExecutorService executorService) {
+    this.executorService = executorService;
+  }
+
+  /**
+   * Run the workers of each search on virtual threads<br>
+   * <br>
+   * The workers of a search are still limited by #setMaxNumOfThreads,but
+   * virtual threads are cheap to create and do not hold a platform thread
+   * while they wait,so many searches can run at the same time.Virtual
+   * threads are available on JDK 21 and later,on older JDKs platform threads
+   * are used.An executor set by #setExecutorService takes precedence.<br>
+   * (default is false)
+   * 
+   * @param enabled
+   */
+  public void setUseVirtualThreads(boolean enabled) {
+    this.useVirtualThreads = enabled;
+  }
+
+  /**
+   * Set the cache to reuse the open files and the mapped regions across the
+   * searches<br>
+   * <br>
+   * The workers of back-to-back searches on the same file skip opening and
+   * mapping the file.The cache is not closed by this searcher,close it when
+   * the files are no longer searched.<br>
+   * (default is null,each worker opens and maps the file)
+   * 
+   * @param fileMappingCache
+   *                         cache to be used,or null
+   */
+  public void setFileMappingCache(FileMappingCache fileMappingCache) {
+    this.fileMappingCache = fileMappingCache;
+  }
+
+  /**
+   * Set how the workers read the file<br>
+   * <br>
+   * MMAP maps the file into memory,PREAD reads it into direct buffers reused
+   * across the searches and LEGACY reads it by RandomAccessFile.PREAD is
+   * often faster on network file systems and in containers with limited
+   * memory.SearchCondition#ioBackend overrides this for a search.<br>
+   * (default is {@link IoBackend#MMAP})
+   * 
+   * @param ioBackend
+   *                  backend to be used
+   */
+  public void setIoBackend(IoBackend ioBackend) {
+    if (ioBackend == null) {
+      throw new RuntimeException("ioBackend must not be null.");
+    }
+    this.ioBackend = ioBackend;
+  }
+
+  /**
+   * Returns whether virtual threads are available on this runtime
+   * 
+   * @return
+   */
+  public static boolean isVirtualThreadsAvailable() {
+    return VIRTUAL_THREAD_FACTORY != null;
+  }
+
+  /**
+   * Create a fixed thread pool of daemon threads to be shared by searchers
+   * with #setExecutorService
+   * 
+   * @param numOfThreads
+   *                     total number of threads for all the searches
+   * @return
+   */
+  public static ExecutorService newSharedExecutorService(int numOfThreads) {
+    return Executors.newFixedThreadPool(numOfThreads, new ThreadFactory() {
+
+      private final AtomicInteger threadNumber = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        final Thread thread = new Thread(r, "bigdoc-worker-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Returns the executor for a search
+   */
+  private ExecutorService acquireExecutorService(int threadPoolSize) {
+    final ExecutorService sharedExecutorService = executorService;
+    if (sharedExecutorService != null) {
+      return sharedExecutorService;
+    }
+    if (useVirtualThreads && VIRTUAL_THREAD_FACTORY != null) {
+      return new SearchThreadPool(threadPoolSize, VIRTUAL_THREAD_FACTORY);
+    }
+    return new SearchThreadPool(threadPoolSize, Executors.defaultThreadFactory());
+  }
+
+  /**
+   * Shut down the executor of a search unless it is the shared one
+   */
+  private static void releaseExecutorService(ExecutorService searchExecutorService) {
+    if (searchExecutorService instanceof SearchThreadPool) {
+      searchExecutorService.shutdown();
+    }
+  }
+
+  /**
+   * Thread pool created for one search
+   */
+  private static final class SearchThreadPool extends ThreadPoolExecutor {
+
+    SearchThreadPool(int numOfThreads, ThreadFactory threadFactory) {
+      super(numOfThreads, numOfThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+    }
+  }
+
   /**
    * Returns the index within this file of the first occurrence of the
    * specified substring.
@@ -188,7 +419,10 @@ public class BigFileSearcher {
 
   /**
    * Returns the index within this file of the first occurrence of the
-   * specified substring, starting at the specified position.
+   * specified substring, starting at the specified position.<br>
+   * <br>
+   * The blocks are searched in a concurrent processing and the search stops
+   * as soon as the first occurrence is determined.
    * 
    * @param f
    *                     target file
@@ -200,7 +434,96 @@ public class BigFileSearcher {
    *         found.
    */
   public Long indexOf(File f, byte[] searchBytes, long fromPosition) {
-    return binFileSearcher.indexOf(f, searchBytes, fromPosition);
+
+    if (fromPosition < 0 || fromPosition > f.length()) {
+      throw new RuntimeException("StartPos is invalid.");
+    }
+
+    final SearchCondition sc = createSearchCondition(f, searchBytes, numOfBlocks(f.length() - fromPosition, f.length()), this.useOptimization, fromPosition);
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      // Blocks are searched concurrently.When a block finds the bytes,the
+      // blocks after it are cancelled but the blocks before it are still
+      // waited for since they may contain an earlier occurrence.
+      return firstPointer(startBlockSearch(ctx, false, 1, CancelMode.LATER_BLOCKS, false, null));
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  /**
+   * Returns the index within this file of the last occurrence of the
+   * specified substring.
+   * 
+   * @param f
+   *                    target file
+   * @param searchBytes
+   *                    sequence of bytes you want to search
+   * @return
+   */
+  public Long lastIndexOf(File f, byte[] searchBytes) {
+    return lastIndexOf(f, searchBytes, f.length());
+  }
+
+  /**
+   * Returns the index within this file of the last occurrence of the
+   * specified substring, searching backward starting at the specified
+   * position.<br>
+   * <br>
+   * The blocks are searched from the last block in a concurrent processing
+   * and each block is read from its end backward,so the search stops as soon
+   * as the last occurrence is determined.
+   * 
+   * @param f
+   *                     target file
+   * @param searchBytes
+   *                     a sequence of bytes you want to find
+   * @param fromPosition
+   *                     the occurrence must start at or before this position
+   * @return position of the last occurence. '-1' means that it was not found.
+   */
+  public Long lastIndexOf(File f, byte[] searchBytes, long fromPosition) {
+
+    BytePattern.checkSearchBytes(searchBytes);
+
+    if (fromPosition < 0 || fromPosition > f.length()) {
+      throw new RuntimeException("StartPos is invalid.");
+    }
+
+    final SearchCondition sc = createSearchCondition(f, searchBytes, 1, this.useOptimization, 0);
+    sc.endPosition = Math.min(fromPosition + searchBytes.length, f.length());
+
+    sc.numOfThreads = numOfBlocks(sc.endPosition, f.length());
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      // the tasks are numbered from the last block,so the blocks before the
+      // block which found the bytes are cancelled
+      return firstPointer(startBlockSearch(ctx, false, 1, CancelMode.LATER_BLOCKS, true, null));
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  /**
+   * Returns the first position found in the order of the tasks and cancels
+   * the tasks after it
+   */
+  private static long firstPointer(BlockSearch<PointerCollector> blockSearch) {
+
+    for (int i = 0; i < blockSearch.futureList.size(); i++) {
+
+      final PointerCollector collector = blockSearch.getResult(i);
+
+      if (collector != null && collector.getNumOfPointers() > 0) {
+        blockSearch.cancel(i + 1);
+        return collector.getPointerList().get(0);
+      }
+    }
+    return -1;
   }
 
   /**
@@ -240,9 +563,6 @@ public class BigFileSearcher {
    */
   public List<Long> searchBigFileRealtime(File f, byte[] searchBytes, long startPosition, OnRealtimeResultListener listener) {
 
-    this.onRealtimeResultListener = listener;
-    this.onProgressListener = null;
-
     int numOfThreadsOptimized = (int) (f.length() / blockSize);
 
     if (numOfThreadsOptimized == 0) {
@@ -251,13 +571,18 @@ public class BigFileSearcher {
 
     final long fileLen = f.length();
 
-    // optimize before calling the method
-    optimize(fileLen);
+    final SearchCondition sc = createSearchCondition(f, searchBytes, numOfThreadsOptimized, false, startPosition);
+    sc.onRealtimeResultListener = listener;
 
-    setMaxNumOfThreads(1);
-    setBlockSize(fileLen);
+    // the blocks are searched one by one with the optimized buffer
+    final SearchContext optimized = optimize(sc, fileLen);
+    final SearchContext ctx = beginSearch(new SearchContext(sc, fileLen, optimized.bufferSizePerWorker, 1));
 
-    return searchBigFile(f, searchBytes, numOfThreadsOptimized, false, startPosition);
+    try {
+      return searchBigFilePointers(ctx).toList();
+    } finally {
+      endSearch(ctx);
+    }
   }
 
   /**
@@ -288,211 +613,1233 @@ public class BigFileSearcher {
    */
   public List<Long> searchBigFile(File f, byte[] searchBytes, OnProgressListener listener) {
 
-    this.onRealtimeResultListener = null;
-    this.onProgressListener = listener;
+    final SearchCondition sc = createSearchCondition(f, searchBytes, numOfBlocks(f.length(), f.length()), this.useOptimization, 0);
+    sc.onProgressListener = listener;
 
-    int numOfThreadsOptimized = (int) (f.length() / (long) blockSize);
+    return searchBigFile(sc);
+  }
 
-    if (numOfThreadsOptimized == 0) {
-      numOfThreadsOptimized = 1;
-    }
+  /**
+   * Search bytes from big file faster in a concurrent processing and returns
+   * the positions without boxing them<br>
+   * <br>
+   * Use this instead of #searchBigFile when a huge number of positions are
+   * expected.
+   * 
+   * @param f
+   *                    target file
+   * @param searchBytes
+   *                    sequence of bytes you want to search
+   * @return
+   */
+  public PointerList searchBigFilePointers(File f, byte[] searchBytes) {
+    return searchBigFilePointers(createSearchCondition(f, searchBytes, numOfBlocks(f.length(), f.length()), this.useOptimization, 0));
+  }
 
-    return searchBigFile(f, searchBytes, numOfThreadsOptimized, this.useOptimization, 0);
+  /**
+   * Search a sequence of bytes with masks from big file faster in a
+   * concurrent processing<br>
+   * <br>
+   * The longest run of the bytes without mask is searched by the engine and
+   * the masked bytes are compared only at the candidates.
+   * 
+   * @param f
+   *                target file
+   * @param pattern
+   *                sequence of bytes with masks like "4D 5A ?? ?? 50 45"
+   * @return
+   */
+  public List<Long> searchBigFile(File f, BytePattern pattern) {
+    return searchBigFilePointers(f, pattern).toList();
   }
 
   /**
-   * Search bytes faster in a concurrent processing with concurrency level.
+   * Search a sequence of bytes with masks from big file and returns the
+   * positions without boxing them
    * 
-   * @param srcFile
-   *                        target file
-   * @param searchBytes
-   *                        sequence of bytes you want to search
-   * @param numOfThreads
-   *                        number of threads
-   * @param useOptimization
-   *                        use optimization or not
-   * @param startPosition
-   *                        starting position
+   * @param f
+   *                target file
+   * @param pattern
+   *                sequence of bytes with masks like "4D 5A ?? ?? 50 45"
    * @return
    */
-  private List<Long> searchBigFile(File srcFile, byte[] searchBytes, int numOfThreads, boolean useOptimization, long startPosition) {
+  public PointerList searchBigFilePointers(File f, BytePattern pattern) {
+
+    final SearchCondition sc = createSearchCondition(f, null, numOfBlocks(f.length(), f.length()), this.useOptimization, 0);
+    sc.searchPattern = pattern;
+
+    return searchBigFilePointers(sc);
+  }
+
+  private SearchCondition createSearchCondition(File srcFile, byte[] searchBytes, int numOfThreads, boolean useOptimization, long startPosition) {
     SearchCondition sc = new SearchCondition();
     sc.srcFile = srcFile;
     sc.searchBytes = searchBytes;
     sc.numOfThreads = numOfThreads;
     sc.useOptimization = useOptimization;
     sc.startPosition = startPosition;
-    return searchBigFile(sc);
+    return sc;
   }
 
+  /**
+   * @deprecated no longer filled.The tasks are kept by each search,use
+   *             #cancel or #cancel(SearchCondition) to stop them.
+   */
+  @Deprecated
   public List<BigFileSearchTask> mTaskList;
 
   /**
-   * Cancel searching
+   * Cancel all the searches running on this instance
    */
   public void cancel() {
-    if (mTaskList != null) {
-      for (BigFileSearchTask task : mTaskList) {
-        task.cancel();
-      }
+    for (SearchContext ctx : activeSearches) {
+      ctx.cancel();
     }
   }
 
-  public List<Long> searchBigFile(SearchCondition sc) {
-
-    this.onRealtimeResultListener = sc.onRealtimeResultListener;
-    this.onProgressListener = sc.onProgressListener;
-
-    progressCache = null;
-
-    final long endPosition;
-
-    if (sc.endPosition == -1) {
-      endPosition = sc.srcFile.length() - 1;
-    } else {
-      endPosition = sc.endPosition;
+  /**
+   * Cancel the searches running with the condition<br>
+   * The other searches running on this instance are not affected.Only the
+   * searches started with this condition instance are cancelled,the
+   * overloads taking a File create their own condition and are not stopped
+   * by this method.Use #cancel to stop them.
+   * 
+   * @param sc
+   *           the condition given to the search
+   */
+  public void cancel(SearchCondition sc) {
+    for (SearchContext ctx : activeSearches) {
+      if (ctx.searchCondition == sc) {
+        ctx.cancel();
+      }
     }
-    final long sizeOfSrcBytes = sc.srcFile.length();
+  }
 
-    if (useOptimization || sc.useOptimization) {
-      optimize(sc.srcFile.length());
-    }
+  /**
+   * Search bytes from big file and returns the positions lazily in ascending
+   * order<br>
+   * <br>
+   * The file is divided into blocks of #setBlockSize and the workers search
+   * only a limited number of blocks ahead of the consumer, so the memory used
+   * does not depend on the number of positions and the first position is
+   * available as soon as the first block is searched.<br>
+   * Close the stream to stop the search when it is not consumed to the end.
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public LongStream searchBigFileStream(SearchCondition sc) {
 
-    _profile_lastStartTime = System.currentTimeMillis();
+    final PointerIterator iterator = searchBigFileIterator(sc);
 
-    if (sc.numOfThreads == 0) {
-      sc.numOfThreads = 1;
-    }
+    final int characteristics = Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
 
-    final int sizeOfSearchBytes = sc.searchBytes.length;
-    final long bytesToReadBlockSize = (sizeOfSrcBytes - (long) sizeOfSearchBytes) / (long) sc.numOfThreads;
+    return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false).onClose(new Runnable() {
 
-    final int threadPoolSize;
+      @Override
+      public void run() {
+        iterator.close();
+      }
+    });
+  }
 
-    if (maxNumOfThreads == THREADS_NO_LIMIT) {
-      threadPoolSize = sc.numOfThreads;
-    } else {
-      threadPoolSize = maxNumOfThreads;
-    }
+  /**
+   * Search bytes from big file and returns the positions lazily in ascending
+   * order<br>
+   * <br>
+   * See #searchBigFileStream.Call PointerIterator#close to stop the search
+   * when it is not iterated to the end.
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public PointerIterator searchBigFileIterator(SearchCondition sc) {
+    return startStreamingSearch(sc, false);
+  }
 
-    final ExecutorService executorService = Executors.newFixedThreadPool(threadPoolSize);
+  /**
+   * Search bytes from big file backward and returns the positions lazily in
+   * descending order<br>
+   * <br>
+   * The blocks are searched from the end of the file,so the last positions
+   * are available without reading the whole file.Close the stream to stop
+   * the search when it is not consumed to the end.
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public LongStream searchBigFileReverseStream(SearchCondition sc) {
 
-    List<Future<List<Long>>> futureList = new ArrayList<Future<List<Long>>>();
+    final PointerIterator iterator = searchBigFileReverseIterator(sc);
 
-    for (int i = 0; i < sc.numOfThreads; i++) {
+    final int characteristics = Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
 
-      final long offset = bytesToReadBlockSize * (long) i + sc.startPosition;
-      final long readLeng;
+    return StreamSupport.longStream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false).onClose(new Runnable() {
 
-      if (i == sc.numOfThreads - 1) {
-        // if it's the last element.
-        readLeng = sizeOfSrcBytes - offset;
-      } else {
-        // else , add the overlapping part size to blockSize
-        readLeng = bytesToReadBlockSize + sizeOfSearchBytes;
+      @Override
+      public void run() {
+        iterator.close();
       }
+    });
+  }
 
-      final BinFileProgressListenerEx progressListener;
+  /**
+   * Search bytes from big file backward and returns the positions lazily in
+   * descending order<br>
+   * <br>
+   * See #searchBigFileReverseStream.Call PointerIterator#close to stop the
+   * search when it is not iterated to the end.
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public PointerIterator searchBigFileReverseIterator(SearchCondition sc) {
+    return startStreamingSearch(sc, true);
+  }
 
-      if (onProgressListener == null && onRealtimeResultListener == null) {
-        progressListener = null;
-      } else {
+  private PointerIterator startStreamingSearch(SearchCondition sc, boolean reverse) {
 
-        progressListener = new BinFileProgressListenerEx() {
+    final SearchContext ctx = beginSearch(sc);
 
-          @Override
-          public void onProgress(int workerNumber, int workerSize, List<Long> pointerList, float progress) {
-            BigFileSearcher.this.onProgress(workerNumber, workerSize, pointerList, progress);
-          }
-        };
-      }
+    try {
+      final int threadPoolSize = (ctx.maxNumOfThreads == THREADS_NO_LIMIT) ? Runtime.getRuntime().availableProcessors() : ctx.maxNumOfThreads;
 
-      final int workerSize = sc.numOfThreads;
-      final int workerNumber = i;
+      final SearchEngine.Matcher matcher = compile(sc);
 
-      final BigFileSearchTask task = new BigFileSearchTask(sc.srcFile, sc.searchBytes, offset, readLeng, workerNumber, workerSize, progressListener);
-      if (mTaskList == null) {
-        mTaskList = new ArrayList<BigFileSearchTask>();
-      }
-      mTaskList.add(task);
-      final Future<List<Long>> future = executorService.submit(task);
+      final long maxNumOfPointers = (sc.maxNumOfPointers > 0) ? sc.maxNumOfPointers : PointerCollector.NO_LIMIT;
 
-      futureList.add(future);
+      return new StreamingSearch(ctx, matcher, sc.startPosition, endOfRange(sc), reverse, threadPoolSize, maxNumOfPointers);
+    } catch (RuntimeException e) {
+      endSearch(ctx);
+      throw e;
     }
-    executorService.shutdown();
+  }
 
-    // Remove duplicate indexes
-    final List<Long> resultIndexList = new CopyOnWriteArrayList<Long>();
+  /**
+   * Search multiple sequences of bytes from big file in a single concurrent
+   * pass<br>
+   * <br>
+   * The file is read only once regardless of the number of sequences, using
+   * an Aho-Corasick automaton built from searchBytesList.
+   * 
+   * @param f
+   *                        target file
+   * @param searchBytesList
+   *                        sequences of bytes you want to search
+   * @return positions of each sequence in the same order as searchBytesList
+   */
+  public List<List<Long>> searchBigFile(File f, List<byte[]> searchBytesList) {
 
-    for (Future<List<Long>> future : futureList) {
+    final List<PointerList> pointerLists = searchBigFilePointers(f, searchBytesList);
 
-      try {
-        List<Long> rawIndexList = future.get();
+    final List<List<Long>> result = new ArrayList<List<Long>>();
+    for (PointerList pointerList : pointerLists) {
+      result.add(pointerList.toList());
+    }
+    return result;
+  }
 
-        for (int i = 0; i < rawIndexList.size(); i++) {
+  /**
+   * Search multiple sequences of bytes from big file in a single concurrent
+   * pass and returns the positions without boxing them
+   * 
+   * @param f
+   *                        target file
+   * @param searchBytesList
+   *                        sequences of bytes you want to search
+   * @return positions of each sequence in the same order as searchBytesList
+   */
+  public List<PointerList> searchBigFilePointers(File f, List<byte[]> searchBytesList) {
+    return searchBigFilePointers(createSearchCondition(f, null, numOfBlocks(f.length(), f.length()), this.useOptimization, 0), searchBytesList);
+  }
 
-          Long longVal = rawIndexList.get(i);
+  /**
+   * Search multiple sequences of bytes from big file with the condition in a
+   * single concurrent pass<br>
+   * <br>
+   * The bytes of the condition are not used.The range,threads and I/O
+   * backend of the condition are used and #cancel(SearchCondition) stops the
+   * search.
+   * 
+   * @param sc
+   *                        search condition
+   * @param searchBytesList
+   *                        sequences of bytes you want to search
+   * @return positions of each sequence in the same order as searchBytesList
+   */
+  public List<PointerList> searchBigFilePointers(SearchCondition sc, List<byte[]> searchBytesList) {
 
-          if (resultIndexList.contains(longVal)) {
-            // if already exists , skip
-          } else {
-            resultIndexList.add(longVal);
-          }
-        }
-      } catch (InterruptedException e) {
-        e.printStackTrace();
-      } catch (ExecutionException e) {
-        e.printStackTrace();
-      } catch (CancellationException e) {
-        e.printStackTrace();
-      } catch (Exception e) {
-        e.printStackTrace();
-      }
-    }
-    // Sort in ascending order
-    binFileSearcher.sort(resultIndexList);
+    final AhoCorasick automaton = new AhoCorasick(searchBytesList);
 
-    _profile_lastEndTime = System.currentTimeMillis();
+    final SearchContext ctx = beginSearch(sc);
 
-    return resultIndexList;
+    try {
+      return searchBigFilePointers(ctx, automaton);
+    } finally {
+      endSearch(ctx);
+    }
   }
 
-  private final class BigFileSearchTask implements Callable<List<Long>> {
+  private List<PointerList> searchBigFilePointers(final SearchContext ctx, final AhoCorasick automaton) {
 
-    final int workerSize;
-    final int workerNumber;
-    final File srcFile;
-    final byte[] searchBytes;
+    final SearchCondition sc = ctx.searchCondition;
 
-    final long startPostion;
+    final BlockSearch<List<PointerList>> blockSearch = new BlockSearch<List<PointerList>>();
+
+    submitBlocks(ctx, blockSearch, sc.startPosition, endOfRange(sc), automaton.maxLength(), false, new BlockTaskFactory<List<PointerList>>() {
+
+      @Override
+      public BlockTask<List<PointerList>> newTask(int workerNumber, int workerSize, long offset, long nextOffset, long endOfBlock) {
+        return new BigFileMultiSearchTask(sc.srcFile, automaton, offset, endOfBlock - offset, nextOffset, ctx.newBlockSearchWorker());
+      }
+    }, null);
+
+    final List<PointerList> resultIndexLists = new ArrayList<PointerList>();
+
+    for (int i = 0; i < automaton.numOfPatterns(); i++) {
+      resultIndexLists.add(new PointerList());
+    }
+
+    // Each worker keeps only the positions starting in its own block,so the
+    // results are already sorted and unique when concatenated in order.
+    for (int i = 0; i < blockSearch.futureList.size(); i++) {
+
+      final List<PointerList> rawIndexLists = blockSearch.getResult(i);
+
+      if (rawIndexLists == null) {
+        continue;
+      }
+
+      for (int j = 0; j < rawIndexLists.size(); j++) {
+        resultIndexLists.get(j).addAll(rawIndexLists.get(j));
+      }
+    }
+
+    return resultIndexLists;
+  }
+
+  /**
+   * Search the ranges of bytes matching a regular expression from big file
+   * in a concurrent processing<br>
+   * <br>
+   * The regular expression is compiled into a DFA and works on bytes.It
+   * supports literals(matched as their UTF-8 bytes), '.'(any byte including
+   * line breaks), character classes like [0-9A-F] or [^\x00-\x1f], \d \w
+   * \s \D \W \S, \xHH, groups (...) (?:...), alternation '|' and the
+   * quantifiers * + ? {n} {n,} {n,m}. Anchors, backreferences and lazy
+   * quantifiers are not supported.<br>
+   * <br>
+   * The matches do not overlap and each match is the longest one at its
+   * position.A match is at most
+   * {@link BinFileSearcher#DEFAULT_MAX_REGEX_MATCH_LENGTH} bytes if the
+   * regular expression can match an unbounded number of bytes.
+   * 
+   * @param f
+   *              target file
+   * @param regex
+   *              regular expression over bytes
+   * @return matches in ascending order
+   */
+  public List<RegexMatch> searchRegex(File f, String regex) {
+    return searchRegex(f, regex, -1);
+  }
+
+  /**
+   * Search the ranges of bytes matching a regular expression from big file
+   * in a concurrent processing
+   * 
+   * @param f
+   *                       target file
+   * @param regex
+   *                       regular expression over bytes
+   * @param maxMatchLength
+   *                       max length of a match.'-1' means the max length of
+   *                       the regular expression,or
+   *                       {@link BinFileSearcher#DEFAULT_MAX_REGEX_MATCH_LENGTH}
+   *                       if it is unbounded.
+   * @return matches in ascending order
+   */
+  public List<RegexMatch> searchRegex(File f, String regex, int maxMatchLength) {
+    return searchRegex(createSearchCondition(f, null, numOfBlocks(f.length(), f.length()), this.useOptimization, 0), regex, maxMatchLength);
+  }
+
+  /**
+   * Search the ranges of bytes matching a regular expression from big file
+   * with the condition in a concurrent processing<br>
+   * <br>
+   * The bytes of the condition are not used.The matches are inside the range
+   * of the condition and #cancel(SearchCondition) stops the search.
+   * 
+   * @param sc
+   *                       search condition
+   * @param regex
+   *                       regular expression over bytes
+   * @param maxMatchLength
+   *                       max length of a match.See #searchRegex(File,
+   *                       String, int).
+   * @return matches in ascending order
+   */
+  public List<RegexMatch> searchRegex(SearchCondition sc, String regex, int maxMatchLength) {
+
+    final ByteRegex byteRegex = new ByteRegex(regex);
+
+    // each block reads this length - 1 bytes beyond its end so that the
+    // matches starting in the block are complete
+    final int lookahead = BinFileSearcher.maxMatchLength(byteRegex, maxMatchLength);
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      return searchRegex(ctx, byteRegex, lookahead);
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  private List<RegexMatch> searchRegex(final SearchContext ctx, final ByteRegex byteRegex, final int lookahead) {
+
+    final SearchCondition sc = ctx.searchCondition;
+
+    final BlockSearch<List<PointerList>> blockSearch = new BlockSearch<List<PointerList>>();
+
+    final List<BigFileRegexSearchTask> taskList = new ArrayList<BigFileRegexSearchTask>();
+
+    submitBlocks(ctx, blockSearch, sc.startPosition, endOfRange(sc), lookahead, false, new BlockTaskFactory<List<PointerList>>() {
+
+      @Override
+      public BlockTask<List<PointerList>> newTask(int workerNumber, int workerSize, long offset, long nextOffset, long endOfBlock) {
+        final BigFileRegexSearchTask task = new BigFileRegexSearchTask(sc.srcFile, byteRegex, lookahead, offset, nextOffset, endOfBlock, ctx.newBlockSearchWorker());
+        taskList.add(task);
+        return task;
+      }
+    }, null);
+
+    final PointerList starts = new PointerList();
+    final PointerList ends = new PointerList();
+
+    // next position to try a match when the range is scanned from the top
+    long position = sc.startPosition;
+
+    for (int i = 0; i < blockSearch.futureList.size(); i++) {
+
+      final BigFileRegexSearchTask task = taskList.get(i);
+
+      final List<PointerList> result = blockSearch.getResult(i);
+
+      if (result == null) {
+        continue;
+      }
+
+      final PointerList blockStarts = result.get(0);
+      final PointerList blockEnds = result.get(1);
+
+      int index = 0;
+
+      while (true) {
+
+        while (index < blockStarts.size() && blockStarts.get(index) < position) {
+          index++;
+        }
+
+        // If a match of the previous block runs into this block and the
+        // position is inside a match of this block,this block tried the
+        // positions in a different way from the scan from the top.Scan again
+        // until the position reaches a position this block also tried.
+        if (position >= task.nextBlockPosition || index == 0 || blockEnds.get(index - 1) <= position) {
+          break;
+        }
+
+        final long rescanLimit = Math.min(blockEnds.get(index - 1), task.nextBlockPosition);
+        final int numOfMatches = starts.size();
+
+        final BinFileSearcher rescanWorker = ctx.newBlockSearchWorker();
+        rescanWorker.searchRegexPartially(sc.srcFile, byteRegex, lookahead, position, rescanLimit, task.endOfBlock, starts, ends);
+
+        if (starts.size() > numOfMatches) {
+          position = Math.max(rescanLimit, ends.get(ends.size() - 1));
+        } else {
+          position = rescanLimit;
+        }
+      }
+
+      for (; index < blockStarts.size(); index++) {
+        starts.add(blockStarts.get(index));
+        ends.add(blockEnds.get(index));
+      }
+
+      if (!ends.isEmpty()) {
+        position = Math.max(position, ends.get(ends.size() - 1));
+      }
+    }
+
+    return BinFileSearcher.toRegexMatches(starts, ends);
+  }
+
+  /**
+   * Search text from big file of a charset in a concurrent processing<br>
+   * <br>
+   * The text is encoded in the charset and the occurrences starting inside
+   * another character(like a trail byte of Shift_JIS or an odd position of
+   * UTF-16) are rejected.Whether an occurrence starts a character is decided
+   * from the bytes just before it.<br>
+   * Supported charsets are UTF-8, UTF-16(BE/LE, the byte order mark is
+   * detected for "UTF-16"), Shift_JIS, windows-31j, EUC-JP, EUC-KR, GB2312,
+   * GBK, Big5 and the single byte charsets.
+   * 
+   * @param f
+   *                target file
+   * @param text
+   *                text you want to search
+   * @param charset
+   *                charset of the file
+   * @return byte offsets of the text in ascending order
+   */
+  public List<Long> searchText(File f, String text, Charset charset) {
+    final CharBoundary boundary = CharBoundary.forCharset(charset, f);
+    return searchTextPointers(f, text, boundary).toList();
+  }
+
+  /**
+   * Search text from big file of a charset in a concurrent processing and
+   * returns the char offsets with the byte offsets<br>
+   * <br>
+   * The char offsets are counted by reading the whole file once more in
+   * blocks concurrently.
+   * 
+   * @param f
+   *                target file
+   * @param text
+   *                text you want to search
+   * @param charset
+   *                charset of the file
+   * @return matches in ascending order
+   */
+  public List<TextMatch> searchTextWithCharOffsets(File f, String text, Charset charset) {
+
+    final CharBoundary boundary = CharBoundary.forCharset(charset, f);
+
+    final PointerList byteOffsets = searchTextPointers(f, text, boundary);
+
+    final SearchContext ctx = beginSearch(createSearchCondition(f, null, numOfBlocks(f.length(), f.length()), this.useOptimization, 0));
+
+    try {
+      return countChars(ctx, boundary, byteOffsets);
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  private List<TextMatch> countChars(final SearchContext ctx, final CharBoundary boundary, final PointerList byteOffsets) {
+
+    final SearchCondition sc = ctx.searchCondition;
+
+    final BlockSearch<long[]> blockSearch = new BlockSearch<long[]>();
+
+    final List<CharCountTask> taskList = new ArrayList<CharCountTask>();
+
+    // the chars are counted from the beginning of the file
+    submitBlocks(ctx, blockSearch, 0, sc.srcFile.length(), 1, false, new BlockTaskFactory<long[]>() {
+
+      // the first match of the next block
+      int fromIndex = 0;
+
+      @Override
+      public BlockTask<long[]> newTask(int workerNumber, int workerSize, long offset, long nextOffset, long endOfBlock) {
+
+        // the matches starting in this block
+        int toIndex = fromIndex;
+        while (toIndex < byteOffsets.size() && byteOffsets.get(toIndex) < nextOffset) {
+          toIndex++;
+        }
+
+        final CharCountTask task = new CharCountTask(sc.srcFile, boundary, offset, nextOffset, byteOffsets, fromIndex, toIndex, ctx.bufferSizePerWorker);
+        taskList.add(task);
+
+        fromIndex = toIndex;
+        return task;
+      }
+    }, null);
+
+    final List<TextMatch> result = new ArrayList<TextMatch>();
+
+    // number of chars before the current block
+    long numOfChars = 0;
+
+    for (int i = 0; i < blockSearch.futureList.size(); i++) {
+
+      final CharCountTask task = taskList.get(i);
+
+      // the char offsets after a failed block cannot be counted,so
+      // getResult fails the search
+      final long[] charOffsets = blockSearch.getResult(i);
+
+      if (charOffsets == null) {
+        throw new CancellationException();
+      }
+
+      for (int j = 0; j < charOffsets.length; j++) {
+        result.add(new TextMatch(byteOffsets.get(task.fromIndex + j), numOfChars + charOffsets[j]));
+      }
+      numOfChars += task.numOfChars;
+    }
+
+    return result;
+  }
+
+  private PointerList searchTextPointers(File f, String text, CharBoundary boundary) {
+
+    final PointerList candidates = searchBigFilePointers(f, boundary.encode(text));
+
+    final PointerList result = new PointerList();
+
+    FileChannel readChannel = null;
+
+    try {
+      readChannel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+
+      for (int i = 0; i < candidates.size(); i++) {
+        final long position = candidates.get(i);
+        if (boundary.isCharStart(readChannel, position)) {
+          result.add(position);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (readChannel != null) {
+        try {
+          readChannel.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+
+    return result;
+  }
+
+  public List<Long> searchBigFile(SearchCondition sc) {
+    return searchBigFilePointers(sc).toList();
+  }
+
+  /**
+   * Search bytes from big file with the condition without blocking the
+   * caller<br>
+   * <br>
+   * The returned future is completed with the positions in ascending order
+   * when every block is searched,or completed exceptionally if a worker
+   * fails.Cancelling the future interrupts the workers and returns after
+   * they have closed their files.
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public CompletableFuture<List<Long>> searchBigFileAsync(SearchCondition sc) {
+
+    final CompletableFuture<List<Long>> result = new CompletableFuture<List<Long>>();
+
+    if (!sc.srcFile.isFile()) {
+      result.completeExceptionally(new FileNotFoundException(sc.srcFile.getPath()));
+      return result;
+    }
+
+    final long maxNumOfPointers = (sc.maxNumOfPointers > 0) ? sc.maxNumOfPointers : PointerCollector.NO_LIMIT;
+
+    final SearchContext ctx = beginSearch(sc);
+
+    final BlockSearch<PointerCollector> blockSearch;
+
+    try {
+      blockSearch = startBlockSearch(ctx, false, maxNumOfPointers, CancelMode.LATER_BLOCKS, false, new Consumer<BlockSearch<PointerCollector>>() {
+
+        @Override
+        public void accept(BlockSearch<PointerCollector> completedBlockSearch) {
+          try {
+            result.complete(collectPointers(completedBlockSearch, maxNumOfPointers).toList());
+          } catch (ExecutionException e) {
+            result.completeExceptionally(e.getCause());
+          } catch (Throwable e) {
+            result.completeExceptionally(e);
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      endSearch(ctx);
+      result.completeExceptionally(e);
+      return result;
+    }
+
+    result.whenComplete(new BiConsumer<List<Long>, Throwable>() {
+
+      @Override
+      public void accept(List<Long> pointers, Throwable e) {
+        if (result.isCancelled()) {
+          // interrupt the workers blocked in reading and wait for them to
+          // close their files before the search ends
+          blockSearch.cancel(0, true);
+          blockSearch.awaitRunningTasks();
+        }
+        endSearch(ctx);
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Concatenate the positions of the completed blocks in order
+   * 
+   * @throws ExecutionException
+   *                            if a block failed
+   */
+  private static PointerList collectPointers(BlockSearch<PointerCollector> blockSearch, long maxNumOfPointers) throws ExecutionException, InterruptedException {
+
+    final PointerList resultIndexList = new PointerList();
+
+    for (Future<PointerCollector> future : blockSearch.futureList) {
+
+      if (future.isCancelled()) {
+        // cancelled since enough positions are found in the former blocks
+        continue;
+      }
+
+      resultIndexList.addAll(future.get().getPointerList());
+
+      if (maxNumOfPointers != PointerCollector.NO_LIMIT && resultIndexList.size() >= maxNumOfPointers) {
+        resultIndexList.truncate((int) maxNumOfPointers);
+        break;
+      }
+    }
+    return resultIndexList;
+  }
+
+  /**
+   * Search bytes from big file with the condition and returns the positions
+   * without boxing them
+   * 
+   * @param sc
+   *           search condition
+   * @return
+   */
+  public PointerList searchBigFilePointers(SearchCondition sc) {
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      return searchBigFilePointers(ctx);
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  private PointerList searchBigFilePointers(SearchContext ctx) {
+
+    final SearchCondition sc = ctx.searchCondition;
+
+    final long maxNumOfPointers = (sc.maxNumOfPointers > 0) ? sc.maxNumOfPointers : PointerCollector.NO_LIMIT;
+
+    final BlockSearch<PointerCollector> blockSearch = startBlockSearch(ctx, false, maxNumOfPointers, CancelMode.LATER_BLOCKS, false, null);
+
+    // Each worker keeps only the positions starting in its own block and the
+    // blocks are in ascending order,so concatenating the results in order
+    // gives sorted and unique positions.
+    final PointerList resultIndexList = new PointerList();
+
+    for (int i = 0; i < blockSearch.futureList.size(); i++) {
+
+      final PointerCollector collector = blockSearch.getResult(i);
+
+      if (collector == null) {
+        continue;
+      }
+
+      final PointerList pointerList = collector.getPointerList();
+
+      if (maxNumOfPointers != PointerCollector.NO_LIMIT && resultIndexList.size() + pointerList.size() >= maxNumOfPointers) {
+        // enough positions are found,so the rest of blocks are not needed
+        pointerList.truncate((int) (maxNumOfPointers - resultIndexList.size()));
+        resultIndexList.addAll(pointerList);
+        blockSearch.cancel(i + 1);
+        break;
+      }
+      resultIndexList.addAll(pointerList);
+    }
+
+    return resultIndexList;
+  }
+
+  /**
+   * Count the occurrences of bytes in big file faster in a concurrent
+   * processing<br>
+   * <br>
+   * The positions are not kept,so the memory used does not depend on the
+   * number of occurrences.
+   * 
+   * @param sc
+   *           search condition
+   * @return number of occurrences
+   */
+  public long countBigFile(SearchCondition sc) {
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      final BlockSearch<PointerCollector> blockSearch = startBlockSearch(ctx, true, PointerCollector.NO_LIMIT, CancelMode.NONE, false, null);
+
+      long numOfPointers = 0;
+
+      for (int i = 0; i < blockSearch.futureList.size(); i++) {
+        final PointerCollector collector = blockSearch.getResult(i);
+        if (collector != null) {
+          numOfPointers += collector.getNumOfPointers();
+        }
+      }
+
+      return numOfPointers;
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  /**
+   * Returns whether the bytes exist in big file<br>
+   * <br>
+   * All workers are cancelled as soon as any of them finds an occurrence.
+   * 
+   * @param sc
+   *           search condition
+   * @return true if found
+   */
+  public boolean existsInBigFile(SearchCondition sc) {
+
+    final SearchContext ctx = beginSearch(sc);
+
+    try {
+      final BlockSearch<PointerCollector> blockSearch = startBlockSearch(ctx, true, 1, CancelMode.ALL_BLOCKS, false, null);
+
+      for (int i = 0; i < blockSearch.futureList.size() && !blockSearch.collectorFull; i++) {
+        blockSearch.getResult(i);
+      }
+
+      final boolean found = blockSearch.collectorFull;
+
+      blockSearch.cancel(0);
+
+      return found;
+    } finally {
+      endSearch(ctx);
+    }
+  }
+
+  /**
+   * Which blocks to cancel when a worker has collected enough positions
+   */
+  private static enum CancelMode {
+    NONE, LATER_BLOCKS, ALL_BLOCKS
+  }
+
+  /**
+   * Tasks and futures of the blocks of one search
+   */
+  private static final class BlockSearch<T> {
+
+    final List<BlockTask<T>> taskList = new ArrayList<BlockTask<T>>();
+    final List<Future<T>> futureList = new ArrayList<Future<T>>();
+
+    // true if any worker has collected enough positions
+    volatile boolean collectorFull;
+
+    // number of the blocks not completed,failed or cancelled yet
+    final AtomicInteger numOfPendingBlocks = new AtomicInteger();
+
+    // threads running a task of this search
+    private final Set<Thread> runningThreads = new HashSet<Thread>();
+
+    /**
+     * Cancel the blocks from the specified block to the last block
+     * 
+     * @param fromBlockNumber
+     */
+    void cancel(int fromBlockNumber) {
+      cancel(fromBlockNumber, false);
+    }
+
+    /**
+     * Cancel the blocks from the specified block to the last block
+     * 
+     * @param fromBlockNumber
+     * @param mayInterruptIfRunning
+     *                              true to interrupt the workers blocked in
+     *                              reading the file
+     */
+    synchronized void cancel(int fromBlockNumber, boolean mayInterruptIfRunning) {
+      for (int i = fromBlockNumber; i < taskList.size(); i++) {
+        taskList.get(i).cancel();
+        futureList.get(i).cancel(mayInterruptIfRunning);
+      }
+    }
+
+    void enter() {
+      synchronized (runningThreads) {
+        runningThreads.add(Thread.currentThread());
+      }
+    }
+
+    void exit() {
+      synchronized (runningThreads) {
+        runningThreads.remove(Thread.currentThread());
+        runningThreads.notifyAll();
+      }
+    }
+
+    /**
+     * Wait until no task of this search is running except the one of the
+     * caller,so the files and the mappings of the workers are released
+     */
+    void awaitRunningTasks() {
+      boolean interrupted = false;
+      synchronized (runningThreads) {
+        while (!runningThreads.isEmpty() && !(runningThreads.size() == 1 && runningThreads.contains(Thread.currentThread()))) {
+          try {
+            runningThreads.wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Wait for the result of the block
+     * 
+     * @param blockNumber
+     * @return null if the block was cancelled because it turned out to be
+     *         unnecessary
+     * @throws RuntimeException
+     *                          if the block failed.The other blocks are
+     *                          cancelled.
+     */
+    T getResult(int blockNumber) {
+      try {
+        return futureList.get(blockNumber).get();
+      } catch (CancellationException e) {
+        // cancelled because it turned out to be unnecessary
+      } catch (InterruptedException e) {
+        cancel(0);
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while searching.", e);
+      } catch (ExecutionException e) {
+        cancel(0);
+        if (e.getCause() instanceof CancellationException) {
+          // cancelled while running
+          throw (CancellationException) e.getCause();
+        }
+        throw new RuntimeException("Failed to search.", e.getCause());
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Compile the bytes(or the bytes with masks) of the search condition with
+   * the engine of the search condition<br>
+   * The case of ASCII letters is folded in the kernel of
+   * {@link MaskedMatcher} if the search condition ignores the case.
+   */
+  private SearchEngine.Matcher compile(SearchCondition sc) {
+
+    if (sc.searchPattern == null) {
+      // checked here too since a custom engine may not check the bytes
+      BytePattern.checkSearchBytes(sc.searchBytes);
+    }
+
+    final SearchEngine engine = (sc.searchEngine != null) ? sc.searchEngine : searchEngine;
+
+    if (sc.ignoreCase) {
+      final BytePattern pattern = (sc.searchPattern != null) ? sc.searchPattern : BytePattern.of(sc.searchBytes);
+      return pattern.ignoreCase().compile(engine);
+    } else if (sc.searchPattern != null) {
+      return sc.searchPattern.compile(engine);
+    } else {
+      return engine.compile(sc.searchBytes);
+    }
+  }
+
+  /**
+   * Returns the end of the range to be searched(exclusive)
+   */
+  private static long endOfRange(SearchCondition sc) {
+    final long sizeOfSrcBytes = sc.srcFile.length();
+    return (sc.endPosition >= 0) ? Math.min(sc.endPosition, sizeOfSrcBytes) : sizeOfSrcBytes;
+  }
+
+  /**
+   * Divide the range into blocks and submit a task for each block
+   * 
+   * @param reverse
+   *                true to search the blocks from the last block and each
+   *                block from its end backward.The tasks are numbered in the
+   *                order of the search.
+   * @param onAllBlocksDone
+   *                called once when every block is completed,failed or
+   *                cancelled,or null
+   */
+  private BlockSearch<PointerCollector> startBlockSearch(final SearchContext ctx, final boolean countOnly, final long maxNumOfPointers, final CancelMode cancelMode, final boolean reverse,
+      Consumer<BlockSearch<PointerCollector>> onAllBlocksDone) {
+
+    final SearchCondition sc = ctx.searchCondition;
+
+    // compiled once and shared by the workers
+    final SearchEngine.Matcher matcher = compile(sc);
+
+    final BlockSearch<PointerCollector> blockSearch = new BlockSearch<PointerCollector>();
+
+    submitBlocks(ctx, blockSearch, sc.startPosition, endOfRange(sc), matcher.length(), reverse, new BlockTaskFactory<PointerCollector>() {
+
+      @Override
+      public BlockTask<PointerCollector> newTask(final int workerNumber, int workerSize, long offset, long nextOffset, long endOfBlock) {
+
+        final BinFileProgressListenerEx progressListener;
+
+        if (!ctx.hasProgressListener()) {
+          progressListener = null;
+        } else {
+
+          progressListener = new BinFileProgressListenerEx() {
+
+            @Override
+            public void onProgress(int workerNumber, int workerSize, List<Long> pointerList, float progress) {
+              ctx.onProgress(workerNumber, pointerList, progress);
+            }
+          };
+        }
+
+        // positions from the next block are left to the next worker
+        final PointerCollector collector = new PointerCollector(countOnly, maxNumOfPointers, nextOffset);
+
+        final Runnable onCollectorFull;
+
+        if (cancelMode == CancelMode.NONE) {
+          onCollectorFull = null;
+        } else {
+          onCollectorFull = new Runnable() {
+
+            @Override
+            public void run() {
+              // set before cancelling since the future of this worker may be
+              // cancelled too
+              blockSearch.collectorFull = true;
+              blockSearch.cancel(cancelMode == CancelMode.ALL_BLOCKS ? 0 : workerNumber + 1);
+            }
+          };
+        }
+
+        return new BigFileSearchTask(sc.srcFile, matcher, offset, endOfBlock - offset, reverse, collector, onCollectorFull, workerNumber, workerSize, progressListener, ctx.newBlockSearchWorker());
+      }
+    }, onAllBlocksDone);
+
+    return blockSearch;
+  }
+
+  /**
+   * Creates the task of a block
+   */
+  private interface BlockTaskFactory<T> {
+
+    /**
+     * @param workerNumber
+     *                     number of the task in the order of the search
+     * @param workerSize
+     *                     number of the tasks
+     * @param offset
+     *                     start of the block
+     * @param nextOffset
+     *                     start of the next block.The results starting from
+     *                     here belong to the next block.
+     * @param endOfBlock
+     *                     end of the bytes the block reads(exclusive)
+     */
+    BlockTask<T> newTask(int workerNumber, int workerSize, long offset, long nextOffset, long endOfBlock);
+  }
+
+  /**
+   * Worker of a block which can be cancelled
+   */
+  private interface BlockTask<T> extends Callable<T>, SearchTask {
+  }
+
+  /**
+   * Divide the range into blocks and submit a task for each block<br>
+   * <br>
+   * The range is split into chunks of at most blockSize(at least one chunk
+   * per thread) and the chunks are queued in order.Each thread takes the next
+   * chunk when it finishes one,so a slow chunk does not leave the other
+   * threads idle at the end.
+   * 
+   * @param startPosition
+   *                        start of the range
+   * @param endPosition
+   *                        end of the range(exclusive)
+   * @param matchLength
+   *                        max length of a match.Each block reads this length
+   *                        - 1 bytes beyond its end so that the matches
+   *                        starting in the block are complete.
+   * @param reverse
+   *                        true to submit the blocks from the last block
+   * @param onAllBlocksDone
+   *                        called once when every block is completed,failed
+   *                        or cancelled,or null
+   */
+  private <T> void submitBlocks(SearchContext ctx, final BlockSearch<T> blockSearch, long startPosition, long endPosition, int matchLength, boolean reverse, BlockTaskFactory<T> taskFactory,
+      final Consumer<BlockSearch<T>> onAllBlocksDone) {
+
+    final int numOfThreads = Math.max(1, ctx.searchCondition.numOfThreads);
+
+    final long sizeToSearch = Math.max(0, endPosition - startPosition - (long) matchLength);
+
+    final long numOfChunks = Math.min(MAX_NUM_OF_CHUNKS, Math.max(numOfThreads, (sizeToSearch + ctx.blockSize - 1) / ctx.blockSize));
+    final int numOfBlocks = (int) numOfChunks;
+
+    final long bytesToReadBlockSize = sizeToSearch / (long) numOfBlocks;
+
+    final int threadPoolSize;
+
+    if (ctx.maxNumOfThreads == THREADS_NO_LIMIT) {
+      threadPoolSize = numOfThreads;
+    } else {
+      threadPoolSize = Math.min(numOfThreads, ctx.maxNumOfThreads);
+    }
+
+    final ExecutorService searchExecutorService = acquireExecutorService(threadPoolSize);
+
+    blockSearch.numOfPendingBlocks.set(numOfBlocks);
+
+    ctx.startProgress(numOfBlocks);
+
+    for (int taskIndex = 0; taskIndex < numOfBlocks; taskIndex++) {
+
+      final int i = reverse ? numOfBlocks - 1 - taskIndex : taskIndex;
+
+      final long offset = bytesToReadBlockSize * (long) i + startPosition;
+      final long nextOffset;
+
+      if (i == numOfBlocks - 1) {
+        // if it's the last element.
+        nextOffset = endPosition;
+      } else {
+        nextOffset = offset + bytesToReadBlockSize;
+      }
+
+      // add the overlapping part size to the block
+      final long endOfBlock = Math.max(offset, Math.min(nextOffset + matchLength - 1, endPosition));
+
+      final BlockTask<T> task = taskFactory.newTask(taskIndex, numOfBlocks, offset, nextOffset, endOfBlock);
+      ctx.register(task);
+
+      final FutureTask<T> future = new FutureTask<T>(task) {
+
+        @Override
+        public void run() {
+          // entered before the state is checked,so a task which has not
+          // started when it is cancelled never reads the file
+          blockSearch.enter();
+          try {
+            super.run();
+          } finally {
+            blockSearch.exit();
+          }
+        }
+
+        @Override
+        protected void done() {
+          if (blockSearch.numOfPendingBlocks.decrementAndGet() == 0 && onAllBlocksDone != null) {
+            onAllBlocksDone.accept(blockSearch);
+          }
+        }
+      };
+
+      // register before submitting so that onCollectorFull can see every task
+      synchronized (blockSearch) {
+        blockSearch.taskList.add(task);
+        blockSearch.futureList.add(future);
+      }
+      searchExecutorService.execute(future);
+    }
+    releaseExecutorService(searchExecutorService);
+  }
+
+  /**
+   * Remove the positions belonging to the next block from the sorted list
+   * 
+   * @param sortedList
+   * @param nextBlockPosition
+   */
+  private static void removePointersOfNextBlock(PointerList sortedList, long nextBlockPosition) {
+    int size = sortedList.size();
+    while (size > 0 && sortedList.get(size - 1) >= nextBlockPosition) {
+      size--;
+    }
+    sortedList.truncate(size);
+  }
+
+  private final class BigFileSearchTask implements BlockTask<PointerCollector> {
+
+    final int workerSize;
+    final int workerNumber;
+    final File srcFile;
+    final SearchEngine.Matcher matcher;
+
+    final long startPostion;
     final long readLeng;
 
+    // true to search from the end of the block backward
+    final boolean reverse;
+
+    final PointerCollector collector;
+
+    // called when the collector has collected enough positions
+    final Runnable onCollectorFull;
+
     final BinFileProgressListenerEx binFileProgressListener;
 
-    BigFileSearchTask(File srcFile, byte[] searchBytes, long startPosition, long readLeng, int workerNumber, int workerSize, BinFileProgressListenerEx listener) {
+    final BinFileSearcher blockSearchWorker;
+
+    BigFileSearchTask(File srcFile, SearchEngine.Matcher matcher, long startPosition, long readLeng, boolean reverse, PointerCollector collector, Runnable onCollectorFull, int workerNumber, int workerSize,
+        BinFileProgressListenerEx listener, BinFileSearcher blockSearchWorker) {
 
       this.srcFile = srcFile;
+      this.matcher = matcher;
       this.startPostion = startPosition;
       this.readLeng = readLeng;
-      this.searchBytes = searchBytes;
+      this.reverse = reverse;
+      this.collector = collector;
+      this.onCollectorFull = onCollectorFull;
       this.binFileProgressListener = listener;
       this.workerNumber = workerNumber;
       this.workerSize = workerSize;
+      this.blockSearchWorker = blockSearchWorker;
     }
 
-    private BinFileSearcher blockSearchWorker;
+    private volatile boolean cancelled;
 
     public void cancel() {
-      if (blockSearchWorker != null)
-        blockSearchWorker.cancel();
+      cancelled = true;
+      blockSearchWorker.cancel();
     }
 
-    public List<Long> call() throws Exception {
+    public PointerCollector call() throws Exception {
 
-      blockSearchWorker = new BinFileSearcher();
-      blockSearchWorker.setBufferSize(bufferSizePerWorker);
-      blockSearchWorker.setSubThreadSize(subThreadSize);
-      blockSearchWorker.setSubBufferSize(subBufferSize);
+      // a block shorter than the bytes cannot contain them
+      if (cancelled || readLeng < matcher.length()) {
+        return collector;
+      }
 
       if (this.binFileProgressListener != null) {
         blockSearchWorker.setBigFileProgressListener(new BinFileProgressListener() {
@@ -504,9 +1851,361 @@ public class BigFileSearcher {
         });
       }
 
-      final List<Long> pointerList = blockSearchWorker.searchPartially(srcFile, searchBytes, startPostion, readLeng);
+      if (reverse) {
+        blockSearchWorker.searchPartiallyReverse(srcFile, matcher, startPostion, readLeng, collector);
+      } else {
+        blockSearchWorker.searchPartially(srcFile, matcher, startPostion, readLeng, collector);
+      }
+
+      if (collector.isFull() && onCollectorFull != null) {
+        onCollectorFull.run();
+      }
+
+      return collector;
+    }
+  }
+
+  private final class BigFileMultiSearchTask implements BlockTask<List<PointerList>> {
+
+    final File srcFile;
+    final AhoCorasick automaton;
+
+    final long startPostion;
+    final long readLeng;
+
+    // positions from here belong to the next block
+    final long nextBlockPosition;
+
+    final BinFileSearcher blockSearchWorker;
+
+    BigFileMultiSearchTask(File srcFile, AhoCorasick automaton, long startPosition, long readLeng, long nextBlockPosition, BinFileSearcher blockSearchWorker) {
+      this.srcFile = srcFile;
+      this.automaton = automaton;
+      this.startPostion = startPosition;
+      this.readLeng = readLeng;
+      this.nextBlockPosition = nextBlockPosition;
+      this.blockSearchWorker = blockSearchWorker;
+    }
+
+    public void cancel() {
+      blockSearchWorker.cancel();
+    }
+
+    public List<PointerList> call() throws Exception {
+
+      final List<PointerList> pointerLists = blockSearchWorker.searchPartiallyUsingNIO(srcFile, automaton, startPostion, readLeng);
+
+      for (PointerList pointerList : pointerLists) {
+        removePointersOfNextBlock(pointerList, nextBlockPosition);
+      }
+      return pointerLists;
+    }
+  }
+
+  private final class BigFileRegexSearchTask implements BlockTask<List<PointerList>> {
+
+    final File srcFile;
+    final ByteRegex regex;
+    final int maxMatchLength;
+
+    final long startPostion;
+
+    // matches starting from here belong to the next block
+    final long nextBlockPosition;
+
+    // matches must end at or before this position
+    final long endOfBlock;
+
+    final BinFileSearcher blockSearchWorker;
+
+    BigFileRegexSearchTask(File srcFile, ByteRegex regex, int maxMatchLength, long startPosition, long nextBlockPosition, long endOfBlock, BinFileSearcher blockSearchWorker) {
+      this.srcFile = srcFile;
+      this.regex = regex;
+      this.maxMatchLength = maxMatchLength;
+      this.startPostion = startPosition;
+      this.nextBlockPosition = nextBlockPosition;
+      this.endOfBlock = endOfBlock;
+      this.blockSearchWorker = blockSearchWorker;
+    }
+
+    public void cancel() {
+      blockSearchWorker.cancel();
+    }
+
+    public List<PointerList> call() throws Exception {
+
+      final PointerList starts = new PointerList();
+      final PointerList ends = new PointerList();
+
+      blockSearchWorker.searchRegexPartially(srcFile, regex, maxMatchLength, startPostion, nextBlockPosition, endOfBlock, starts, ends);
+
+      final List<PointerList> result = new ArrayList<PointerList>();
+      result.add(starts);
+      result.add(ends);
+      return result;
+    }
+  }
+
+  /**
+   * Counts the chars of a block and the chars before each match in the block
+   */
+  private final class CharCountTask implements BlockTask<long[]> {
+
+    final File srcFile;
+    final CharBoundary boundary;
+
+    final long startPosition;
+
+    // characters starting from here belong to the next block
+    final long nextBlockPosition;
+
+    // the matches in this block are byteOffsets[fromIndex,toIndex)
+    final PointerList byteOffsets;
+    final int fromIndex;
+    final int toIndex;
+
+    final int bufferSize;
+
+    // number of the chars starting in this block
+    long numOfChars;
+
+    private volatile boolean cancelled;
+
+    CharCountTask(File srcFile, CharBoundary boundary, long startPosition, long nextBlockPosition, PointerList byteOffsets, int fromIndex, int toIndex, int bufferSize) {
+      this.srcFile = srcFile;
+      this.boundary = boundary;
+      this.startPosition = startPosition;
+      this.nextBlockPosition = nextBlockPosition;
+      this.byteOffsets = byteOffsets;
+      this.fromIndex = fromIndex;
+      this.toIndex = toIndex;
+      this.bufferSize = bufferSize;
+    }
+
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public long[] call() throws Exception {
+
+      final long[] charOffsets = new long[toIndex - fromIndex];
+
+      final FileChannel readChannel = FileChannel.open(srcFile.toPath(), StandardOpenOption.READ);
+
+      // the buffer is reused across the searches
+      final ByteBuffer buf = BufferPool.HEAP.acquire(bufferSize);
+
+      try {
+
+        long position = boundary.charStartAtOrAfter(readChannel, startPosition);
+        int index = fromIndex;
+
+        while (position < nextBlockPosition && !cancelled) {
+
+          // cast to Buffer to run on Java 8
+          ((Buffer) buf).clear();
+          ((Buffer) buf).limit(bufferSize);
+          final int readSize = readChannel.read(buf, position);
+
+          if (readSize <= 0) {
+            break;
+          }
+
+          final long limit = Math.min(readSize, nextBlockPosition - position);
+
+          // only the first byte of each character is needed,so a character
+          // may run beyond the buffer
+          int offset = 0;
+
+          while (offset < limit) {
+
+            while (index < toIndex && byteOffsets.get(index) <= position + offset) {
+              charOffsets[index - fromIndex] = numOfChars;
+              index++;
+            }
+
+            final int leadByte = buf.get(offset) & 0xff;
+            numOfChars += boundary.numOfJavaChars(leadByte);
+            offset += boundary.charLength(leadByte);
+          }
+          position += offset;
+        }
+      } finally {
+        readChannel.close();
+        BufferPool.HEAP.release(buf);
+      }
+
+      if (cancelled) {
+        // the chars of this block are not counted to the end
+        throw new CancellationException();
+      }
+
+      return charOffsets;
+    }
+  }
+
+  /**
+   * Searches the blocks in order with a bounded number of blocks ahead of the
+   * consumer
+   */
+  private final class StreamingSearch implements PointerIterator {
+
+    final SearchContext ctx;
+
+    final File srcFile;
+    final SearchEngine.Matcher matcher;
+
+    // range to be searched
+    final long startPosition;
+    final long endPosition;
+
+    final long blockSizeToRead;
+
+    // true to search the blocks from the end of the range backward
+    final boolean reverse;
+
+    final ExecutorService searchExecutorService;
+
+    final LinkedList<BigFileSearchTask> pendingTasks = new LinkedList<BigFileSearchTask>();
+    final LinkedList<Future<PointerCollector>> pendingFutures = new LinkedList<Future<PointerCollector>>();
+
+    // start of the next block(end of the next block in reverse order)
+    long nextBlockPosition;
+
+    final long maxNumOfPointers;
+    long numOfPointersReturned;
+
+    PointerList currentPointerList;
+    int currentIndex;
+
+    boolean closed;
+
+    StreamingSearch(SearchContext ctx, SearchEngine.Matcher matcher, long startPosition, long endPosition, boolean reverse, int threadPoolSize, long maxNumOfPointers) {
+
+      this.ctx = ctx;
+      this.srcFile = ctx.searchCondition.srcFile;
+      this.matcher = matcher;
+      this.startPosition = startPosition;
+      this.endPosition = endPosition;
+      this.reverse = reverse;
+      this.blockSizeToRead = Math.max(ctx.blockSize, matcher.length());
+      this.nextBlockPosition = reverse ? endPosition : startPosition;
+      this.maxNumOfPointers = maxNumOfPointers;
+
+      if (executorService != null || (useVirtualThreads && VIRTUAL_THREAD_FACTORY != null)) {
+        // virtual threads do not block JVM shutdown
+        this.searchExecutorService = acquireExecutorService(threadPoolSize);
+      } else {
+        this.searchExecutorService = new SearchThreadPool(threadPoolSize, new ThreadFactory() {
+
+          @Override
+          public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "bigdoc-streaming-search");
+            // not to block JVM shutdown even if the iteration is abandoned
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+
+      for (int i = 0; i < threadPoolSize * STREAMING_BLOCKS_PER_THREAD; i++) {
+        submitNextBlock();
+      }
+    }
+
+    private void submitNextBlock() {
+
+      final long offset;
+      final long nextOffset;
+
+      if (reverse) {
+        if (nextBlockPosition <= startPosition) {
+          return;
+        }
+        nextOffset = nextBlockPosition;
+        offset = Math.max(nextOffset - blockSizeToRead, startPosition);
+        nextBlockPosition = offset;
+      } else {
+        if (nextBlockPosition >= endPosition) {
+          return;
+        }
+        offset = nextBlockPosition;
+        nextOffset = Math.min(offset + blockSizeToRead, endPosition);
+        nextBlockPosition = nextOffset;
+      }
+
+      final long readLeng = Math.min(nextOffset + matcher.length() - 1, endPosition) - offset;
+
+      final PointerCollector collector = new PointerCollector(false, PointerCollector.NO_LIMIT, nextOffset);
+      final BigFileSearchTask task = new BigFileSearchTask(srcFile, matcher, offset, readLeng, reverse, collector, null, 0, 1, null, ctx.newBlockSearchWorker());
+      ctx.register(task);
+
+      pendingTasks.add(task);
+      pendingFutures.add(searchExecutorService.submit(task));
+    }
+
+    @Override
+    public boolean hasNext() {
+
+      if (maxNumOfPointers != PointerCollector.NO_LIMIT && numOfPointersReturned >= maxNumOfPointers) {
+        // the remaining blocks are not needed
+        close();
+        return false;
+      }
+
+      while (currentPointerList == null || currentIndex >= currentPointerList.size()) {
+
+        if (closed || pendingFutures.isEmpty()) {
+          close();
+          return false;
+        }
+
+        final Future<PointerCollector> future = pendingFutures.removeFirst();
+        pendingTasks.removeFirst();
+
+        // keep the workers busy while the consumer handles this block
+        submitNextBlock();
+
+        try {
+          currentPointerList = future.get().getPointerList();
+          currentIndex = 0;
+        } catch (InterruptedException e) {
+          close();
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while searching.", e);
+        } catch (ExecutionException e) {
+          close();
+          throw new RuntimeException("Failed to search.", e.getCause());
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public long nextLong() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      numOfPointersReturned++;
+      return currentPointerList.get(currentIndex++);
+    }
 
-      return pointerList;
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (BigFileSearchTask task : pendingTasks) {
+        task.cancel();
+      }
+      for (Future<PointerCollector> future : pendingFutures) {
+        future.cancel(false);
+      }
+      pendingTasks.clear();
+      pendingFutures.clear();
+      releaseExecutorService(searchExecutorService);
+      endSearch(ctx);
     }
   }
 
@@ -529,15 +2228,16 @@ public class BigFileSearcher {
 
       if (useResultCache) {
         this.pointerList = new CopyOnWriteArrayList[workerSize];
+        // the blocks which have not reported yet have no positions
+        for (int i = 0; i < workerSize; i++) {
+          this.pointerList[i] = new CopyOnWriteArrayList<Long>();
+        }
       }
     }
 
     synchronized void setProgress(int workerNumber, float progress, List<Long> pointerList) {
       this.progress[workerNumber] = progress;
       if (useResultCache) {
-        if (this.pointerList[workerNumber] == null) {
-          this.pointerList[workerNumber] = new CopyOnWriteArrayList<Long>();
-        }
         this.pointerList[workerNumber].clear();
         this.pointerList[workerNumber].addAll(pointerList);
       }
@@ -564,24 +2264,139 @@ public class BigFileSearcher {
     }
   }
 
-  // Call from each worker thread
-  private void onProgress(final int workerNumber, final int workerSize, final List<Long> pointerList, final float progress) {
+  /**
+   * Worker of a search which can be cancelled
+   */
+  private interface SearchTask {
+    public void cancel();
+  }
+
+  /**
+   * Settings and state of one search<br>
+   * The settings are copied from the searcher(or optimized for the file) when
+   * the search starts,so changing the searcher does not affect the searches
+   * running.
+   */
+  private static final class SearchContext {
+
+    // condition given by the caller,or null
+    final SearchCondition searchCondition;
+
+    final long blockSize;
+    final int bufferSizePerWorker;
+    final int maxNumOfThreads;
+
+    final OnProgressListener onProgressListener;
+    final OnRealtimeResultListener onRealtimeResultListener;
+
+    // set when the search starts
+    private FileMappingCache fileMappingCache;
+    private IoBackend ioBackend;
+
+    private ProgressCache progressCache;
+
+    private final List<SearchTask> taskList = new CopyOnWriteArrayList<SearchTask>();
 
-    if (progressCache == null) {
-      progressCache = new ProgressCache(workerSize, (onRealtimeResultListener != null));
+    private volatile boolean cancelled;
+
+    SearchContext(SearchCondition searchCondition, long blockSize, int bufferSizePerWorker, int maxNumOfThreads) {
+      this.searchCondition = searchCondition;
+      this.blockSize = Math.max(1, blockSize);
+      this.bufferSizePerWorker = bufferSizePerWorker;
+      this.maxNumOfThreads = maxNumOfThreads;
+      this.onProgressListener = (searchCondition != null) ? searchCondition.onProgressListener : null;
+      this.onRealtimeResultListener = (searchCondition != null) ? searchCondition.onRealtimeResultListener : null;
+    }
+
+    /**
+     * Create the searcher for a block of this search
+     */
+    BinFileSearcher newBlockSearchWorker() {
+      final BinFileSearcher blockSearchWorker = new BinFileSearcher();
+      blockSearchWorker.setBufferSize(bufferSizePerWorker);
+      blockSearchWorker.setFileMappingCache(fileMappingCache);
+      blockSearchWorker.setIoBackend(ioBackend);
+      return blockSearchWorker;
+    }
+
+    void register(SearchTask task) {
+      taskList.add(task);
+      // cancelled while the tasks are being submitted
+      if (cancelled) {
+        task.cancel();
+      }
+    }
+
+    void cancel() {
+      cancelled = true;
+      for (SearchTask task : taskList) {
+        task.cancel();
+      }
+    }
+
+    boolean hasProgressListener() {
+      return onProgressListener != null || onRealtimeResultListener != null;
+    }
+
+    synchronized void startProgress(int workerSize) {
+      if (hasProgressListener()) {
+        progressCache = new ProgressCache(workerSize, (onRealtimeResultListener != null));
+      }
+    }
+
+    // Call from each worker thread
+    synchronized void onProgress(final int workerNumber, final List<Long> pointerList, final float progress) {
+
+      progressCache.setProgress(workerNumber, progress, pointerList);
+
+      if (onProgressListener != null) {
+        onProgressListener.onProgress(progressCache.getProgress());
+      }
+
+      if (onRealtimeResultListener != null) {
+        onRealtimeResultListener.onRealtimeResultListener(progressCache.getProgress(), progressCache.getResultPointers());
+      }
     }
+  }
 
-    progressCache.setProgress(workerNumber, progress, pointerList);
+  /**
+   * Start a search with the settings of this searcher,or the settings
+   * optimized for the file if the optimization is enabled
+   */
+  private SearchContext beginSearch(SearchCondition sc) {
+    return beginSearch(sc, sc.srcFile.length(), useOptimization || sc.useOptimization);
+  }
 
-    if (onProgressListener != null) {
-      onProgressListener.onProgress(progressCache.getProgress());
+  private SearchContext beginSearch(SearchCondition sc, long fileLength, boolean useOptimization) {
+    if (useOptimization) {
+      return beginSearch(optimize(sc, fileLength));
     }
+    return beginSearch(new SearchContext(sc, blockSize, bufferSizePerWorker, maxNumOfThreads));
+  }
+
+  private SearchContext beginSearch(SearchContext ctx) {
+    ctx.fileMappingCache = fileMappingCache;
+    ctx.ioBackend = (ctx.searchCondition != null && ctx.searchCondition.ioBackend != null) ? ctx.searchCondition.ioBackend : ioBackend;
+    activeSearches.add(ctx);
+    _profile_lastStartTime = System.currentTimeMillis();
+    return ctx;
+  }
 
-    if (onRealtimeResultListener != null) {
-      onRealtimeResultListener.onRealtimeResultListener(progressCache.getProgress(), progressCache.getResultPointers());
+  private void endSearch(SearchContext ctx) {
+    if (activeSearches.remove(ctx)) {
+      _profile_lastEndTime = System.currentTimeMillis();
     }
   }
 
+  /**
+   * Returns the number of blocks of the size for the block size which the
+   * next search uses
+   */
+  private int numOfBlocks(long sizeToSearch, long fileLength) {
+    final long blockSizeToUse = useOptimization ? optimizedBlockSize(fileLength) : blockSize;
+    return (int) Math.max(1, Math.max(0, sizeToSearch) / Math.max(1, blockSizeToUse));
+  }
+
   /**
    * 
    * Get operation time in millis of last search
@@ -609,42 +2424,61 @@ public class BigFileSearcher {
   }
 
   /**
-   * Optimize threading and memory
+   * Optimize threading and memory for the file
    * 
+   * @param sc
    * @param fileLength
+   * @return settings of a search
    */
-  private void optimize(long fileLength) {
-
-    final int availableProcessors = Runtime.getRuntime().availableProcessors();
+  private SearchContext optimize(SearchCondition sc, long fileLength) {
 
     final long free = Runtime.getRuntime().freeMemory() / 2;
 
-    int workerSize = availableProcessors / 2;
-    if (workerSize < 2) {
-      workerSize = 2;
-    }
+    final int workerSize = optimizedNumOfWorkers();
 
     long bufferSize = free / workerSize;
     if (bufferSize > 1 * 1024 * 1024) {
       bufferSize = 1 * 1024 * 1024;
     }
 
-    long blockSize = fileLength / workerSize;
-    if (blockSize > 1 * 1024 * 1024) {
-      blockSize = 1 * 1024 * 1024;
-    }
-    int iBlockSize = (int) blockSize;
+    final long blockSize = optimizedBlockSize(fileLength);
 
     if (bufferSize > blockSize) {
       bufferSize = blockSize;
     }
     int iBufferSize = (int) bufferSize;
 
-    this.setBlockSize(iBlockSize);
-    this.setMaxNumOfThreads(workerSize);
-    this.setBufferSizePerWorker(iBufferSize);
-    this.setSubBufferSize(256);
+    return new SearchContext(sc, blockSize, iBufferSize, workerSize);
+  }
+
+  private static int optimizedNumOfWorkers() {
 
+    final int availableProcessors = Runtime.getRuntime().availableProcessors();
+
+    int workerSize = availableProcessors / 2;
+    if (workerSize < 2) {
+      workerSize = 2;
+    }
+    return workerSize;
+  }
+
+  private static long optimizedBlockSize(long fileLength) {
+
+    final int workerSize = optimizedNumOfWorkers();
+
+    long blockSize = fileLength / workerSize;
+    if (blockSize > 1 * 1024 * 1024) {
+      blockSize = 1 * 1024 * 1024;
+    }
+
+    // A big file is divided into larger blocks so that a worker maps a large
+    // region of the block once and scans the windows inside it,while the
+    // blocks are still enough to balance the workers.
+    final long largeBlockSize = Math.min(RegionMapper.MAX_REGION_SIZE, fileLength / (workerSize * OPTIMIZED_NUM_OF_BLOCKS_PER_WORKER));
+    if (blockSize < largeBlockSize) {
+      blockSize = largeBlockSize;
+    }
+    return Math.max(1, blockSize);
   }
 
   private String getMegaBytes(long valBytes) {
@@ -24,21 +24,16 @@
 package org.riversun.bigdoc.bin;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.riversun.finbin.BigBinarySearcher;
-
 /**
  * Search sequence of bytes from Binary file<br>
  * 
@@ -47,21 +42,27 @@ import org.riversun.finbin.BigBinarySearcher;
  */
 public class BinFileSearcher {
 
-  private static final boolean USE_NIO = true;
-
   /**
    * Default size to be read into memory at one search
    */
   public static final int DEFAULT_BUFFER_SIZE = 1 * 1024 * 1024;
 
+  /**
+   * Default max length of a match of a regular expression that can match an
+   * unbounded number of bytes
+   */
+  public static final int DEFAULT_MAX_REGEX_MATCH_LENGTH = 4 * 1024;
+
   /**
    * Default number of threads used at the same time in one search
    */
+  @Deprecated
   public static final int DEFAULT_SUB_BUFFER_SIZE = 512;
 
   /**
    * Dfault size of the window used to scan memory
    */
+  @Deprecated
   public static final int DEFAULT_SUB_THREAD_SIZE = 32;
 
   public static interface BinFileProgressListener {
@@ -86,6 +87,28 @@ public class BinFileSearcher {
    */
   private int subBufferSize = DEFAULT_SUB_BUFFER_SIZE;
 
+  /**
+   * Engine to find the sequence of bytes in the buffer
+   */
+  private SearchEngine searchEngine = new AutoSearchEngine();
+
+  /**
+   * Cache of the open files and the mapped regions,or null to open the file
+   * for each search
+   */
+  private FileMappingCache fileMappingCache;
+
+  /**
+   * How the file is read
+   */
+  private IoBackend ioBackend = IoBackend.MMAP;
+
+  /**
+   * Max size of the region mapped at once,the windows of bufferSize are
+   * scanned inside the region
+   */
+  private int regionSize = RegionMapper.MAX_REGION_SIZE;
+
   private final AtomicBoolean cancelled = new AtomicBoolean(false);
 
   public void cancel() {
@@ -105,7 +128,10 @@ public class BinFileSearcher {
    * Set number of threads used at the same time in one search
    * 
    * @param subThreadSize
+   * @deprecated the buffer is now scanned by {@link SearchEngine} in the
+   *             calling thread, so this value is ignored.
    */
+  @Deprecated
   public void setSubThreadSize(int subThreadSize) {
     this.subThreadSize = subThreadSize;
   }
@@ -114,11 +140,77 @@ public class BinFileSearcher {
    * Set the size of the window used to scan memory
    * 
    * @param subBufferSize
+   * @deprecated the buffer is now scanned by {@link SearchEngine} in the
+   *             calling thread, so this value is ignored.
    */
+  @Deprecated
   public void setSubBufferSize(int subBufferSize) {
     this.subBufferSize = subBufferSize;
   }
 
+  /**
+   * Set the engine to find the sequence of bytes in the buffer<br>
+   * (default is {@link AutoSearchEngine})
+   * 
+   * @param searchEngine
+   */
+  public void setSearchEngine(SearchEngine searchEngine) {
+    this.searchEngine = searchEngine;
+  }
+
+  /**
+   * Set how the file is read<br>
+   * (default is {@link IoBackend#MMAP})
+   * 
+   * @param ioBackend
+   */
+  public void setIoBackend(IoBackend ioBackend) {
+    if (ioBackend == null) {
+      throw new RuntimeException("ioBackend must not be null.");
+    }
+    this.ioBackend = ioBackend;
+  }
+
+  /**
+   * Returns whether {@link IoBackend#SEGMENT} maps the file as one
+   * MemorySegment on this runtime(JDK 21 and later)
+   * 
+   * @return
+   */
+  public static boolean isMemorySegmentAvailable() {
+    return SegmentSupport.isAvailable();
+  }
+
+  /**
+   * Set max size of the region of the file mapped at once<br>
+   * <br>
+   * The range to be searched is mapped by regions of this size and the
+   * windows of #setBufferSize are scanned inside them,so a range is not
+   * mapped again for each window.A region is unmapped as soon as the windows
+   * move out of it.With {@link IoBackend#SEGMENT} the whole range is mapped
+   * as one MemorySegment instead on JDK 21 and later.<br>
+   * (default is Integer.MAX_VALUE,the max size of a MappedByteBuffer)
+   * 
+   * @param regionSize
+   */
+  public void setRegionSize(int regionSize) {
+    if (regionSize < 1) {
+      throw new RuntimeException("regionSize must be greater than 0.");
+    }
+    this.regionSize = regionSize;
+  }
+
+  /**
+   * Set the cache to reuse the open files and the mapped regions across the
+   * searches<br>
+   * (default is null,the file is opened and mapped for each search)
+   * 
+   * @param fileMappingCache
+   */
+  public void setFileMappingCache(FileMappingCache fileMappingCache) {
+    this.fileMappingCache = fileMappingCache;
+  }
+
   /**
    * Set the listener that callbacks the search-progress
    * 
@@ -155,41 +247,62 @@ public class BinFileSearcher {
    */
   public Long indexOf(File f, byte[] searchBytes, long fromPosition) {
 
-    final List<Long> result;
-    if (USE_NIO) {
+    // stop as soon as the first position is found
+    final PointerCollector collector = new PointerCollector(false, 1, Long.MAX_VALUE);
 
-      result = searchPartiallyUsingNIO(f, searchBytes, fromPosition, -1, new BinFileProgressListener() {
+    searchPartially(f, searchBytes, fromPosition, -1, collector);
 
-        @Override
-        public void onProgress(List<Long> pointerList, float progress, float currentPosition, float startPosition, long maxSizeToRead) {
-
-          if (bigFileProgressListener != null) {
-            bigFileProgressListener.onProgress(pointerList, progress, currentPosition, startPosition, maxSizeToRead);
-          }
-
-          if (pointerList.size() > 0) {
-            BinFileSearcher.this.stop();
-          }
-        }
-      });
+    final PointerList result = collector.getPointerList();
 
+    if (result.size() > 0) {
+      return result.get(0);
     } else {
+      return -1L;
+    }
+  }
 
-      result = searchPartiallyUsingLegacy(f, searchBytes, fromPosition, -1, new BinFileProgressListener() {
+  /**
+   * Returns the index within this file of the last occurrence of the
+   * specified substring.
+   * 
+   * @param f
+   * @param searchBytes
+   * @return
+   */
+  public Long lastIndexOf(File f, byte[] searchBytes) {
+    return lastIndexOf(f, searchBytes, f.length());
+  }
 
-        @Override
-        public void onProgress(List<Long> pointerList, float progress, float currentPosition, float startPosition, long maxSizeToRead) {
+  /**
+   * Returns the index within this file of the last occurrence of the
+   * specified substring, searching backward starting at the specified
+   * position.<br>
+   * <br>
+   * The file is read from the end of the range backward,so the occurrences
+   * near the end of the file are found without reading the whole file.
+   * 
+   * @param f
+   *                     target file
+   * @param searchBytes
+   *                     a sequence of bytes you want to find
+   * @param fromPosition
+   *                     the occurrence must start at or before this position
+   * @return position of the last occurence. '-1' means that it was not found.
+   */
+  public Long lastIndexOf(File f, byte[] searchBytes, long fromPosition) {
 
-          if (bigFileProgressListener != null) {
-            bigFileProgressListener.onProgress(pointerList, progress, currentPosition, startPosition, maxSizeToRead);
-          }
+    BytePattern.checkSearchBytes(searchBytes);
 
-          if (pointerList.size() > 0) {
-            BinFileSearcher.this.stop();
-          }
-        }
-      });
+    if (fromPosition < 0 || fromPosition > f.length()) {
+      throw new RuntimeException("StartPos is invalid.");
     }
+
+    final PointerCollector collector = new PointerCollector(false, 1, Long.MAX_VALUE);
+
+    searchPartiallyReverse(f, searchBytes, 0, Math.min(fromPosition + searchBytes.length, f.length()), collector);
+
+    final PointerList result = collector.getPointerList();
+
     if (result.size() > 0) {
       return result.get(0);
     } else {
@@ -197,6 +310,25 @@ public class BinFileSearcher {
     }
   }
 
+  /**
+   * Returns the number of occurrences of the specified bytes in the file
+   * without keeping their positions
+   * 
+   * @param f
+   *                    target file
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return
+   */
+  public long count(File f, byte[] searchBytes) {
+
+    final PointerCollector collector = new PointerCollector(true, PointerCollector.NO_LIMIT, Long.MAX_VALUE);
+
+    searchPartially(f, searchBytes, 0, -1, collector);
+
+    return collector.getNumOfPointers();
+  }
+
   /**
    * 
    * @param f
@@ -204,11 +336,199 @@ public class BinFileSearcher {
    * @return
    */
   public List<Long> search(File f, byte[] searchBytes) {
+    return searchPointers(f, searchBytes).toList();
+  }
+
+  /**
+   * Search for a sequence of bytes from the file and returns the positions
+   * without boxing them
+   * 
+   * @param f
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return
+   */
+  public PointerList searchPointers(File f, byte[] searchBytes) {
     final long startPosition = 0;
 
     // -1 means read until the end
     final long maxSizeToRead = -1;
-    return searchPartially(f, searchBytes, startPosition, maxSizeToRead);
+    return searchPointersPartially(f, searchBytes, startPosition, maxSizeToRead);
+  }
+
+  /**
+   * Search for a sequence of bytes with masks from the file
+   * 
+   * @param f
+   * @param pattern
+   *                sequence of bytes with masks like "4D 5A ?? ?? 50 45"
+   * @return
+   */
+  public List<Long> search(File f, BytePattern pattern) {
+    return searchPointers(f, pattern).toList();
+  }
+
+  /**
+   * Search for a sequence of bytes with masks from the file and returns the
+   * positions without boxing them
+   * 
+   * @param f
+   * @param pattern
+   *                sequence of bytes with masks like "4D 5A ?? ?? 50 45"
+   * @return
+   */
+  public PointerList searchPointers(File f, BytePattern pattern) {
+    final PointerCollector collector = new PointerCollector();
+    searchPartially(f, pattern.compile(searchEngine), 0, -1, collector);
+    return collector.getPointerList();
+  }
+
+  /**
+   * Search for the ranges of bytes matching a regular expression from the
+   * file<br>
+   * <br>
+   * The matches do not overlap and each match is the longest one at its
+   * position.See {@link BigFileSearcher#searchRegex(File, String)} for the
+   * syntax.
+   * 
+   * @param f
+   * @param regex
+   *              regular expression over bytes
+   * @return
+   */
+  public List<RegexMatch> searchRegex(File f, String regex) {
+    return searchRegex(f, regex, -1);
+  }
+
+  /**
+   * Search for the ranges of bytes matching a regular expression from the
+   * file
+   * 
+   * @param f
+   * @param regex
+   *                       regular expression over bytes
+   * @param maxMatchLength
+   *                       max length of a match.'-1' means the max length of
+   *                       the regular expression,or
+   *                       {@link #DEFAULT_MAX_REGEX_MATCH_LENGTH} if it is
+   *                       unbounded.
+   * @return
+   */
+  public List<RegexMatch> searchRegex(File f, String regex, int maxMatchLength) {
+
+    final ByteRegex byteRegex = new ByteRegex(regex);
+
+    final PointerList starts = new PointerList();
+    final PointerList ends = new PointerList();
+
+    final long fileSize = f.length();
+
+    searchRegexPartially(f, byteRegex, maxMatchLength(byteRegex, maxMatchLength), 0, fileSize, fileSize, starts, ends);
+
+    return toRegexMatches(starts, ends);
+  }
+
+  static int maxMatchLength(ByteRegex regex, int maxMatchLength) {
+    if (maxMatchLength > 0) {
+      return maxMatchLength;
+    }
+    return (regex.maxLength() > 0) ? regex.maxLength() : DEFAULT_MAX_REGEX_MATCH_LENGTH;
+  }
+
+  static List<RegexMatch> toRegexMatches(PointerList starts, PointerList ends) {
+    final List<RegexMatch> matches = new ArrayList<RegexMatch>(starts.size());
+    for (int i = 0; i < starts.size(); i++) {
+      matches.add(new RegexMatch(starts.get(i), ends.get(i)));
+    }
+    return matches;
+  }
+
+  /**
+   * Search for the ranges of bytes matching the regular expression that
+   * start in [startPosition,startLimit) and end at or before endPosition
+   * 
+   * @param starts
+   *               starts of the matches are added
+   * @param ends
+   *               ends(exclusive) of the matches are added
+   */
+  void searchRegexPartially(File f, ByteRegex regex, int maxMatchLength, long startPosition, long startLimit, long endPosition, PointerList starts, PointerList ends) {
+
+    isLoopInprogress = true;
+
+    FileMappingCache.MappedFile mappedFile = null;
+    WindowMapper windowMapper = null;
+
+    try {
+
+      mappedFile = FileMappingCache.open(fileMappingCache, f);
+
+      final long targetFileSize = mappedFile.size();
+
+      if (startPosition < 0 || startPosition > targetFileSize) {
+        throw new RuntimeException("StartPos is invalid.");
+      }
+
+      final long endOfRange = Math.min(endPosition, targetFileSize);
+
+      // a window must be able to hold the longest match
+      final int windowSize = Math.max(bufferSize, maxMatchLength * 2);
+
+      windowMapper = newWindowMapper(mappedFile, startPosition, endOfRange, false);
+
+      // next position to try a match
+      long position = startPosition;
+
+      while (isLoopInprogress && position < startLimit) {
+
+        if (cancelled.get()) {
+          break;
+        }
+
+        final long offsetPos = position;
+        final int bytesToBeRead = (int) Math.min(windowSize, endOfRange - offsetPos);
+
+        if (bytesToBeRead <= 0) {
+          break;
+        }
+
+        final ByteBuffer mappedByteBuffer = windowMapper.map(offsetPos, bytesToBeRead);
+
+        final boolean isLastWindow = (offsetPos + bytesToBeRead == endOfRange);
+
+        // positions whose longest match may exceed the window are tried in
+        // the next window
+        final long scanLimit = isLastWindow ? startLimit : Math.min(startLimit, offsetPos + bytesToBeRead - maxMatchLength + 1);
+        final int relScanLimit = (int) (scanLimit - offsetPos);
+
+        int relPointer = 0;
+
+        while (relPointer < relScanLimit) {
+
+          final int relEnd = regex.matchAt(mappedByteBuffer, relPointer, Math.min(relPointer + maxMatchLength, bytesToBeRead));
+
+          if (relEnd > 0) {
+            starts.add(offsetPos + relPointer);
+            ends.add(offsetPos + relEnd);
+            relPointer = relEnd;
+          } else {
+            relPointer++;
+          }
+        }
+
+        position = offsetPos + relPointer;
+      }
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (windowMapper != null) {
+        windowMapper.close();
+      }
+      if (mappedFile != null) {
+        mappedFile.close();
+      }
+    }
   }
 
   /**
@@ -225,33 +545,232 @@ public class BinFileSearcher {
    * @return
    */
   public List<Long> searchPartially(File f, byte[] searchBytes, long startPosition, long maxSizeToRead) {
-    if (USE_NIO) {
-      return searchPartiallyUsingNIO(f, searchBytes, startPosition, maxSizeToRead, null);
+    return searchPointersPartially(f, searchBytes, startPosition, maxSizeToRead).toList();
+  }
+
+  /**
+   * Search for a sequence of bytes from the file within the specified size
+   * range starting at the specified position and returns the positions
+   * without boxing them
+   * 
+   * @param f
+   * @param searchBytes
+   *                      a sequence of bytes you want to find
+   * @param startPosition
+   *                      '0' means the beginning of the file
+   * @param maxSizeToRead
+   *                      max size to read.'-1' means read until the end.
+   * @return
+   */
+  public PointerList searchPointersPartially(File f, byte[] searchBytes, long startPosition, long maxSizeToRead) {
+    final PointerCollector collector = new PointerCollector();
+    searchPartially(f, searchBytes, startPosition, maxSizeToRead, collector);
+    return collector.getPointerList();
+  }
+
+  /**
+   * Search for a sequence of bytes from the end of the file backward and
+   * returns the positions in descending order
+   * 
+   * @param f
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return
+   */
+  public PointerList searchPointersReverse(File f, byte[] searchBytes) {
+    final PointerCollector collector = new PointerCollector();
+    searchPartiallyReverse(f, searchBytes, 0, -1, collector);
+    return collector.getPointerList();
+  }
+
+  /**
+   * Search for a sequence of bytes within the specified size range from the
+   * end of the range backward and pass the positions to the collector until
+   * the collector requests to stop
+   */
+  void searchPartiallyReverse(File f, byte[] searchBytes, long startPosition, long maxSizeToRead, PointerCollector collector) {
+    searchPartiallyReverse(f, searchEngine.compile(searchBytes), startPosition, maxSizeToRead, collector);
+  }
+
+  void searchPartiallyReverse(File f, SearchEngine.Matcher matcher, long startPosition, long maxSizeToRead, PointerCollector collector) {
+    searchPartiallyReverseUsingNIO(f, matcher, startPosition, maxSizeToRead, collector);
+  }
+
+  /**
+   * Search for a sequence of bytes and pass the positions to the collector
+   * until the collector requests to stop
+   */
+  void searchPartially(File f, byte[] searchBytes, long startPosition, long maxSizeToRead, PointerCollector collector) {
+    searchPartially(f, searchEngine.compile(searchBytes), startPosition, maxSizeToRead, collector);
+  }
+
+  /**
+   * Search for the sequence of bytes compiled into the matcher and pass the
+   * positions to the collector until the collector requests to stop
+   */
+  void searchPartially(File f, SearchEngine.Matcher matcher, long startPosition, long maxSizeToRead, PointerCollector collector) {
+    if (ioBackend == IoBackend.LEGACY) {
+      searchPartiallyUsingLegacy(f, matcher, startPosition, maxSizeToRead, null, collector);
     } else {
-      return searchPartiallyUsingLegacy(f, searchBytes, startPosition, maxSizeToRead, null);
+      searchPartiallyUsingNIO(f, matcher, startPosition, maxSizeToRead, null, collector);
+    }
+  }
+
+  /**
+   * Search for multiple sequences of bytes from the file in a single pass
+   * 
+   * @param f
+   * @param searchBytesList
+   *                        sequences of bytes you want to find
+   * @return positions of each sequence in the same order as searchBytesList
+   */
+  public List<List<Long>> search(File f, List<byte[]> searchBytesList) {
+    return searchPartially(f, searchBytesList, 0, -1);
+  }
+
+  /**
+   * Search for multiple sequences of bytes from the file within the specified
+   * size range starting at the specified position in a single pass
+   * 
+   * @param f
+   * @param searchBytesList
+   *                        sequences of bytes you want to find
+   * @param startPosition
+   *                        '0' means the beginning of the file
+   * @param maxSizeToRead
+   *                        max size to read.'-1' means read until the end.
+   * @return positions of each sequence in the same order as searchBytesList
+   */
+  public List<List<Long>> searchPartially(File f, List<byte[]> searchBytesList, long startPosition, long maxSizeToRead) {
+
+    final List<PointerList> pointerLists = searchPartiallyUsingNIO(f, new AhoCorasick(searchBytesList), startPosition, maxSizeToRead);
+
+    final List<List<Long>> result = new ArrayList<List<Long>>();
+    for (PointerList pointerList : pointerLists) {
+      result.add(pointerList.toList());
     }
+    return result;
   }
 
-  protected List<Long> searchPartiallyUsingNIO(File f, byte[] searchBytes, long startPosition, long maxSizeToRead, BinFileProgressListener listener) {
+  List<PointerList> searchPartiallyUsingNIO(File f, AhoCorasick automaton, long startPosition, long maxSizeToRead) {
+
+    final List<PointerList> pointerLists = new ArrayList<PointerList>();
 
-    final List<Long> pointerList = new ArrayList<Long>();
+    for (int i = 0; i < automaton.numOfPatterns(); i++) {
+      pointerLists.add(new PointerList());
+    }
 
     isLoopInprogress = true;
 
-    final BigBinarySearcher bbs = new BigBinarySearcher();
+    final boolean hasReadingLimit = (maxSizeToRead > 0);
+
+    FileMappingCache.MappedFile mappedFile = null;
+    WindowMapper windowMapper = null;
+
+    try {
+
+      mappedFile = FileMappingCache.open(fileMappingCache, f);
+
+      final long targetFileSize = mappedFile.size();
 
-    bbs.setMaxNumOfThreads(subThreadSize);
-    bbs.setBufferSize(subBufferSize);
+      if (startPosition < 0 || startPosition > targetFileSize) {
+        throw new RuntimeException("StartPos is invalid.");
+      }
+
+      final long endPosition;
+
+      if (hasReadingLimit) {
+        endPosition = Math.min(startPosition + maxSizeToRead, targetFileSize) - 1;
+      } else {
+        endPosition = targetFileSize - 1;
+      }
+
+      // The state of the automaton is carried over to the next window, so
+      // windows do not need to overlap.
+      int state = automaton.initialState();
+
+      windowMapper = newWindowMapper(mappedFile, startPosition, endPosition + 1, false);
+
+      long offsetPos = startPosition;
+
+      while (isLoopInprogress && offsetPos <= endPosition) {
+
+        if (cancelled.get()) {
+          break;
+        }
+
+        final int bytesToBeScanned = (int) Math.min(bufferSize, (endPosition + 1) - offsetPos);
+
+        final ByteBuffer mappedByteBuffer = windowMapper.map(offsetPos, bytesToBeScanned);
+
+        for (int i = 0; i < bytesToBeScanned; i++) {
+
+          state = automaton.nextState(state, mappedByteBuffer.get(i));
+
+          final int[] patternIndexes = automaton.outputs(state);
+
+          if (patternIndexes != null) {
+            final long endPointer = offsetPos + i;
+            for (int patternIndex : patternIndexes) {
+              pointerLists.get(patternIndex).add(endPointer - automaton.length(patternIndex) + 1);
+            }
+          }
+        }
+
+        offsetPos += bytesToBeScanned;
+
+        if (bigFileProgressListener != null) {
+          float progress = (float) (offsetPos - startPosition) / (float) (endPosition + 1 - startPosition);
+          bigFileProgressListener.onProgress(Collections.<Long> emptyList(), progress, offsetPos, startPosition, endPosition);
+        }
+      }
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (windowMapper != null) {
+        windowMapper.close();
+      }
+      if (mappedFile != null) {
+        mappedFile.close();
+      }
+    }
+
+    return pointerLists;
+  }
+
+  /**
+   * Map the range [startPosition,endPosition) of the file<br>
+   * The range is mapped by the regions of regionSize,or as one MemorySegment
+   * if the backend is SEGMENT and it is available.With PREAD or LEGACY the
+   * windows are read into pooled buffers.
+   */
+  private WindowMapper newWindowMapper(FileMappingCache.MappedFile mappedFile, long startPosition, long endPosition, boolean reverse) throws IOException {
+    if (ioBackend == IoBackend.PREAD || ioBackend == IoBackend.LEGACY) {
+      return new PreadWindowMapper(mappedFile.channel(), BufferPool.DIRECT);
+    }
+    if (ioBackend == IoBackend.SEGMENT && SegmentSupport.isAvailable()) {
+      return SegmentSupport.newWindowMapper(mappedFile.channel(), startPosition, endPosition);
+    }
+    return new RegionMapper(mappedFile, startPosition, endPosition, regionSize, reverse);
+  }
+
+  protected void searchPartiallyUsingNIO(File f, SearchEngine.Matcher matcher, long startPosition, long maxSizeToRead, BinFileProgressListener listener, PointerCollector collector) {
+
+    isLoopInprogress = true;
+
+    final int lengthOfSearchBytes = matcher.length();
 
     final boolean hasReadingLimit = (maxSizeToRead > 0);
 
-    FileChannel readChannel = null;
+    FileMappingCache.MappedFile mappedFile = null;
+    WindowMapper windowMapper = null;
 
     try {
 
-      readChannel = FileChannel.open(Paths.get(f.getAbsolutePath()), StandardOpenOption.READ);
+      mappedFile = FileMappingCache.open(fileMappingCache, f);
 
-      final long targetFileSize = readChannel.size();
+      final long targetFileSize = mappedFile.size();
 
       if (startPosition < 0 || startPosition > targetFileSize) {
         throw new RuntimeException("StartPos is invalid.");
@@ -272,17 +791,15 @@ public class BinFileSearcher {
 
       long offsetPos = startPosition;
 
-      final int byteShiftForSearch = (searchBytes.length - 1);
+      final int byteShiftForSearch = (lengthOfSearchBytes - 1);
 
       final int actualBufferSize = (int) Math.min(bufferSize, targetFileSize);
 
-      if (searchBytes.length > actualBufferSize) {
+      if (lengthOfSearchBytes > actualBufferSize) {
         throw new RuntimeException("The length of the target bytes is less than bufferSize.Please set more bigger bufferSize.");
       }
 
-      MappedByteBuffer mappedByteBuffer = null;
-
-      byte buf[] = new byte[actualBufferSize];
+      windowMapper = newWindowMapper(mappedFile, startPosition, endPosition + 1, false);
 
       while (isLoopInprogress) {
 
@@ -291,64 +808,37 @@ public class BinFileSearcher {
         }
         final int bytesToBeRead = (int) Math.min(actualBufferSize, targetFileSize - offsetPos);
 
-        mappedByteBuffer = readChannel.map(FileChannel.MapMode.READ_ONLY, offsetPos, bytesToBeRead);
-
-        mappedByteBuffer.get(buf, 0, bytesToBeRead);
-
-        final byte[] bufForSearch;
-
-        final int bytesToBeEatByBigBinSearcher;
+        final int bytesToBeScanned;
 
         if (hasReadingLimit && ((offsetPos + bytesToBeRead) >= endPosition + 1)) {
 
           // When reading is over compared with the set readingLimit
+          bytesToBeScanned = (int) ((endPosition + 1) - offsetPos);
 
-          final long lValidReadingSize = (endPosition + 1) - offsetPos;
-
-          final int iValidReadingSize = (int) lValidReadingSize;
-
-          bufForSearch = new byte[iValidReadingSize];
-
-          bytesToBeEatByBigBinSearcher = iValidReadingSize;
-
-          // set pos to first
-          mappedByteBuffer.rewind();
-
-          // transfer bytes from nioByteBuf into bufForSearch
-          mappedByteBuffer.get(bufForSearch, 0, iValidReadingSize);
-
+        } else {
+          bytesToBeScanned = bytesToBeRead;
         }
 
-        else {
-          if (bytesToBeRead != actualBufferSize) {
-
-            bufForSearch = new byte[bytesToBeRead];
+        final ByteBuffer mappedByteBuffer = windowMapper.map(offsetPos, bytesToBeScanned);
 
-            // set pos to first,set limit to pointer of
-            // bytesRead
-            mappedByteBuffer.flip();
+        // scan the mapped region in place without copying it into the heap
+        int relPointer = matcher.indexOf(mappedByteBuffer, 0, bytesToBeScanned);
 
-            // transfer bytes from nioByteBuf into bufForSearch
-            mappedByteBuffer.get(bufForSearch);
+        while (relPointer >= 0) {
+          long absolutePointer = (long) relPointer + offsetPos;
 
-          } else {
-            bufForSearch = buf;
+          if (!collector.add(absolutePointer)) {
+            stop();
+            break;
           }
-          bytesToBeEatByBigBinSearcher = bytesToBeRead;
-        }
-
-        final List<Integer> relPointerList = bbs.searchBigBytes(bufForSearch, searchBytes);
-
-        for (Integer relPointer : relPointerList) {
-          long absolutePointer = (long) relPointer.intValue() + offsetPos;
-          pointerList.add((Long) absolutePointer);
 
+          relPointer = matcher.indexOf(mappedByteBuffer, relPointer + 1, bytesToBeScanned);
         }
 
         // The reason of "- byteShiftForSearch".Read followings.
         // In order to read the value which straddles between the buffer
         // and buffer.
-        offsetPos += bytesToBeEatByBigBinSearcher - byteShiftForSearch;
+        offsetPos += bytesToBeScanned - byteShiftForSearch;
 
         long bytesRemain = (endPosition + 1) - offsetPos;
 
@@ -357,7 +847,7 @@ public class BinFileSearcher {
         }
         if (listener != null) {
           float progress = (float) offsetPos / (float) endPosition;
-          listener.onProgress(pointerList, progress, offsetPos, startPosition, endPosition);
+          listener.onProgress(collector.asList(), progress, offsetPos, startPosition, endPosition);
         }
 
         if (bytesRemain == byteShiftForSearch) {
@@ -367,46 +857,141 @@ public class BinFileSearcher {
           }
           if (listener != null) {
             float progress = 1.0f;
-            listener.onProgress(pointerList, progress, offsetPos, startPosition, endPosition);
+            listener.onProgress(collector.asList(), progress, offsetPos, startPosition, endPosition);
           }
 
           break;
         }
       }
 
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new UncheckedIOException(e);
     } finally {
-      if (readChannel != null) {
-        try {
-          readChannel.close();
-        } catch (IOException e) {
-        }
+      if (windowMapper != null) {
+        windowMapper.close();
+      }
+      if (mappedFile != null) {
+        mappedFile.close();
       }
 
     }
 
-    sort(pointerList);
-
-    return pointerList;
   }
 
-  private List<Long> searchPartiallyUsingLegacy(File f, byte[] searchBytes, long startPosition, long maxSizeToRead, BinFileProgressListener listener) {
-
-    final List<Long> pointerList = new ArrayList<Long>();
+  protected void searchPartiallyReverseUsingNIO(File f, SearchEngine.Matcher matcher, long startPosition, long maxSizeToRead, PointerCollector collector) {
 
     isLoopInprogress = true;
 
-    final BigBinarySearcher bbs = new BigBinarySearcher();
+    final int lengthOfSearchBytes = matcher.length();
+
+    final boolean hasReadingLimit = (maxSizeToRead > 0);
+
+    FileMappingCache.MappedFile mappedFile = null;
+    WindowMapper windowMapper = null;
+
+    try {
+
+      mappedFile = FileMappingCache.open(fileMappingCache, f);
+
+      final long targetFileSize = mappedFile.size();
+
+      if (startPosition < 0 || startPosition > targetFileSize) {
+        throw new RuntimeException("StartPos is invalid.");
+      }
+
+      final long endPosition;
+
+      if (hasReadingLimit) {
+        if (startPosition + maxSizeToRead > targetFileSize) {
+          endPosition = targetFileSize - 1;
+        } else {
+          endPosition = startPosition + maxSizeToRead - 1;
+        }
+
+      } else {
+        endPosition = targetFileSize - 1;
+      }
+
+      final int byteShiftForSearch = (lengthOfSearchBytes - 1);
+
+      final int actualBufferSize = (int) Math.min(bufferSize, targetFileSize);
+
+      if (lengthOfSearchBytes > actualBufferSize) {
+        throw new RuntimeException("The length of the target bytes is less than bufferSize.Please set more bigger bufferSize.");
+      }
+
+      // the windows are mapped from the end of the range backward
+      long windowEndPos = endPosition + 1;
+
+      windowMapper = newWindowMapper(mappedFile, startPosition, endPosition + 1, true);
+
+      while (isLoopInprogress) {
+
+        if (cancelled.get()) {
+          break;
+        }
+
+        final long offsetPos = Math.max(startPosition, windowEndPos - actualBufferSize);
+
+        final int bytesToBeScanned = (int) (windowEndPos - offsetPos);
+
+        if (bytesToBeScanned < lengthOfSearchBytes) {
+          break;
+        }
+
+        final ByteBuffer mappedByteBuffer = windowMapper.map(offsetPos, bytesToBeScanned);
 
-    bbs.setMaxNumOfThreads(subThreadSize);
-    bbs.setBufferSize(subBufferSize);
+        int relPointer = matcher.lastIndexOf(mappedByteBuffer, 0, bytesToBeScanned);
+
+        while (relPointer >= 0) {
+          long absolutePointer = (long) relPointer + offsetPos;
+
+          if (!collector.add(absolutePointer)) {
+            stop();
+            break;
+          }
+
+          // the previous occurrence must start before this one
+          relPointer = matcher.lastIndexOf(mappedByteBuffer, 0, relPointer + byteShiftForSearch);
+        }
+
+        if (offsetPos == startPosition) {
+          break;
+        }
+
+        // The reason of "+ byteShiftForSearch".
+        // In order to read the value which straddles between the buffer
+        // and buffer.
+        windowEndPos = offsetPos + byteShiftForSearch;
+      }
+
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (windowMapper != null) {
+        windowMapper.close();
+      }
+      if (mappedFile != null) {
+        mappedFile.close();
+      }
+
+    }
+
+  }
+
+  private void searchPartiallyUsingLegacy(File f, SearchEngine.Matcher matcher, long startPosition, long maxSizeToRead, BinFileProgressListener listener, PointerCollector collector) {
+
+    isLoopInprogress = true;
+
+    final int lengthOfSearchBytes = matcher.length();
 
     final boolean hasReadingLimit = (maxSizeToRead > 0);
 
     RandomAccessFile raf = null;
+
+    // the buffer is reused for all the windows and returned to the pool
+    ByteBuffer bufForSearch = null;
+
     try {
       raf = new RandomAccessFile(f, "r");
 
@@ -429,65 +1014,56 @@ public class BinFileSearcher {
         endPosition = targetFileSize - 1;
       }
 
-      byte byteBuf[] = null;
-
       long offsetPos = startPosition;
 
-      final ByteBuffer nioByteBuf;
-
-      if (searchBytes.length > bufferSize) {
+      if (lengthOfSearchBytes > bufferSize) {
         throw new RuntimeException("The length of the target bytes is less than bufferSize.Please set more bigger bufferSize.");
       }
 
-      final int byteShiftForSearch = (searchBytes.length - 1);
+      final int byteShiftForSearch = (lengthOfSearchBytes - 1);
+
+      bufForSearch = BufferPool.HEAP.acquire(bufferSize);
+
+      final byte[] byteBuf = bufForSearch.array();
 
       while (isLoopInprogress) {
 
+        if (cancelled.get()) {
+          break;
+        }
+
         raf.seek(offsetPos);
 
         final int actualBytesRead;
 
-        byteBuf = new byte[bufferSize];
-        actualBytesRead = raf.read(byteBuf);
+        actualBytesRead = raf.read(byteBuf, 0, bufferSize);
 
-        final byte[] bufForSearch;
+        if (actualBytesRead <= 0) {
+          break;
+        }
 
         final int bytesRead;
 
         if (hasReadingLimit && ((offsetPos + actualBytesRead) >= endPosition + 1)) {
 
           // When reading is over compared with the set readingLimit
+          bytesRead = (int) ((endPosition + 1) - offsetPos);
 
-          final long lValidReadingSize = (endPosition + 1) - offsetPos;
-
-          final int iValidReadingSize = (int) lValidReadingSize;
-
-          bufForSearch = new byte[iValidReadingSize];
-
-          bytesRead = iValidReadingSize;
-
-          System.arraycopy(byteBuf, 0, bufForSearch, 0, iValidReadingSize);
-
+        } else {
+          bytesRead = actualBytesRead;
         }
 
-        else {
-          if (actualBytesRead != bufferSize) {
+        int relPointer = matcher.indexOf(bufForSearch, 0, bytesRead);
 
-            bufForSearch = new byte[actualBytesRead];
+        while (relPointer >= 0) {
+          long absolutePointer = (long) relPointer + offsetPos;
 
-            System.arraycopy(byteBuf, 0, bufForSearch, 0, actualBytesRead);
-          } else {
-            bufForSearch = byteBuf;
+          if (!collector.add(absolutePointer)) {
+            stop();
+            break;
           }
-          bytesRead = actualBytesRead;
-        }
-
-        final List<Integer> relPointerList = bbs.searchBigBytes(bufForSearch, searchBytes);
-
-        for (Integer relPointer : relPointerList) {
-          long absolutePointer = (long) relPointer.intValue() + offsetPos;
-          pointerList.add((Long) absolutePointer);
 
+          relPointer = matcher.indexOf(bufForSearch, relPointer + 1, bytesRead);
         }
 
         // The reason of "- byteShiftForSearch".Read followings.
@@ -502,7 +1078,7 @@ public class BinFileSearcher {
         }
         if (listener != null) {
           float progress = (float) offsetPos / (float) endPosition;
-          listener.onProgress(pointerList, progress, offsetPos, startPosition, endPosition);
+          listener.onProgress(collector.asList(), progress, offsetPos, startPosition, endPosition);
         }
 
         if (bytesRemain == byteShiftForSearch) {
@@ -512,17 +1088,15 @@ public class BinFileSearcher {
           }
           if (listener != null) {
             float progress = 1.0f;
-            listener.onProgress(pointerList, progress, offsetPos, startPosition, endPosition);
+            listener.onProgress(collector.asList(), progress, offsetPos, startPosition, endPosition);
           }
 
           break;
         }
       }
 
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
     } catch (IOException e) {
-      e.printStackTrace();
+      throw new UncheckedIOException(e);
     } finally {
       if (raf != null) {
         try {
@@ -530,12 +1104,12 @@ public class BinFileSearcher {
         } catch (IOException e) {
         }
       }
+      if (bufForSearch != null) {
+        BufferPool.HEAP.release(bufForSearch);
+      }
 
     }
 
-    sort(pointerList);
-
-    return pointerList;
   }
 
   protected void sort(List<Long> list) {
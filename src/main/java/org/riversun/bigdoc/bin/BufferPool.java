@@ -0,0 +1,140 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of the buffers to read the file into,shared by the workers of all the
+ * searches<br>
+ * <br>
+ * The buffers are reused instead of being allocated for each window or
+ * search,so a search allocates nothing proportional to the size of the file.
+ * The buffers are pooled by their capacity rounded up to a power of two,the
+ * workers using the same bufferSizePerWorker share the same buffers.A buffer
+ * that exceeds the pool is dropped,a direct one is freed at once.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class BufferPool {
+
+  /**
+   * Max total size(bytes) of the buffers kept in each pool
+   */
+  static final long MAX_POOLED_SIZE = 64L * 1024L * 1024L;
+
+  /**
+   * Pool of direct buffers to read the file by FileChannel
+   */
+  static final BufferPool DIRECT = new BufferPool(true, MAX_POOLED_SIZE);
+
+  /**
+   * Pool of heap buffers to read the file into byte arrays
+   */
+  static final BufferPool HEAP = new BufferPool(false, MAX_POOLED_SIZE);
+
+  private final boolean direct;
+
+  private final long maxPooledSize;
+
+  // buffers by their capacity
+  private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>> buffers = new ConcurrentHashMap<Integer, ConcurrentLinkedQueue<ByteBuffer>>();
+
+  private final AtomicLong pooledSize = new AtomicLong();
+
+  BufferPool(boolean direct, long maxPooledSize) {
+    this.direct = direct;
+    this.maxPooledSize = maxPooledSize;
+  }
+
+  /**
+   * Returns a cleared buffer whose capacity is at least the specified size
+   * 
+   * @param capacity
+   * @return
+   */
+  ByteBuffer acquire(int capacity) {
+
+    final int pooledCapacity = pooledCapacity(capacity);
+
+    final ConcurrentLinkedQueue<ByteBuffer> queue = buffers.get(pooledCapacity);
+
+    final ByteBuffer buf = (queue != null) ? queue.poll() : null;
+
+    if (buf != null) {
+      pooledSize.addAndGet(-buf.capacity());
+      // cast to Buffer to run on Java 8
+      ((Buffer) buf).clear();
+      return buf;
+    }
+    return direct ? ByteBuffer.allocateDirect(pooledCapacity) : ByteBuffer.allocate(pooledCapacity);
+  }
+
+  /**
+   * Return the buffer to the pool,the buffer must not be used after this
+   * 
+   * @param buf
+   *            buffer returned by #acquire
+   */
+  void release(ByteBuffer buf) {
+
+    if (pooledSize.addAndGet(buf.capacity()) > maxPooledSize) {
+      pooledSize.addAndGet(-buf.capacity());
+      if (direct) {
+        BufferUnmapper.unmap(buf);
+      }
+      return;
+    }
+
+    ConcurrentLinkedQueue<ByteBuffer> queue = buffers.get(buf.capacity());
+    if (queue == null) {
+      final ConcurrentLinkedQueue<ByteBuffer> newQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+      queue = buffers.putIfAbsent(buf.capacity(), newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.offer(buf);
+  }
+
+  /**
+   * Returns the capacity rounded up to a power of two
+   */
+  static int pooledCapacity(int capacity) {
+    if (capacity <= 1) {
+      return 1;
+    }
+    final int highestOneBit = Integer.highestOneBit(capacity - 1);
+    if (highestOneBit >= (1 << 30)) {
+      // cannot be rounded up
+      return capacity;
+    }
+    return highestOneBit << 1;
+  }
+}
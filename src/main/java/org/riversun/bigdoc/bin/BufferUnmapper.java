@@ -0,0 +1,116 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+/**
+ * Unmaps a MappedByteBuffer without waiting for the garbage collector<br>
+ * <br>
+ * Uses sun.misc.Unsafe#invokeCleaner on Java 9 and later and the cleaner of
+ * the buffer on Java 8.If neither is available,the buffer is left to the
+ * garbage collector.The buffer must not be accessed after it is unmapped.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class BufferUnmapper {
+
+  private static final Object UNSAFE;
+  private static final Method INVOKE_CLEANER;
+
+  private static final Method CLEANER;
+  private static final Method CLEAN;
+
+  static {
+    Object unsafe = null;
+    Method invokeCleaner = null;
+    Method cleaner = null;
+    Method clean = null;
+
+    try {
+      // Java 9 and later
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafe = theUnsafe.get(null);
+    } catch (Exception e) {
+      invokeCleaner = null;
+      try {
+        // Java 8
+        cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+        clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      } catch (Exception e2) {
+        cleaner = null;
+        clean = null;
+      }
+    }
+
+    UNSAFE = unsafe;
+    INVOKE_CLEANER = invokeCleaner;
+    CLEANER = cleaner;
+    CLEAN = clean;
+  }
+
+  private BufferUnmapper() {
+  }
+
+  /**
+   * Returns whether the buffers can be unmapped on this runtime
+   * 
+   * @return
+   */
+  static boolean isAvailable() {
+    return INVOKE_CLEANER != null || CLEAN != null;
+  }
+
+  /**
+   * Unmap the buffer returned by FileChannel#map<br>
+   * Slices and duplicates must not be passed.
+   * 
+   * @param buf
+   */
+  static void unmap(ByteBuffer buf) {
+
+    if (buf == null || !buf.isDirect()) {
+      return;
+    }
+
+    try {
+      if (INVOKE_CLEANER != null) {
+        INVOKE_CLEANER.invoke(UNSAFE, buf);
+      } else if (CLEAN != null) {
+        final Object cleaner = CLEANER.invoke(buf);
+        if (cleaner != null) {
+          CLEAN.invoke(cleaner);
+        }
+      }
+    } catch (Exception e) {
+      // left to the garbage collector
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+/**
+ * Sequence of bytes with a mask for each byte<br>
+ * <br>
+ * Only the bits set in the mask are compared, so a byte whose mask is 0x00
+ * matches any byte.Use this to find records whose headers contain variable
+ * fields.
+ * 
+ * <pre>
+ * BytePattern pattern = BytePattern.parse("4D 5A ?? ?? 50 45");
+ * </pre>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public final class BytePattern {
+
+  private static final int CASE_FOLDING_MASK = 0xdf;
+
+  private final byte[] bytes;
+  private final byte[] mask;
+
+  private BytePattern(byte[] bytes, byte[] mask) {
+
+    checkSearchBytes(bytes);
+    if (bytes.length != mask.length) {
+      throw new RuntimeException("The length of the mask is different from the length of the bytes.");
+    }
+
+    this.bytes = new byte[bytes.length];
+    this.mask = mask.clone();
+
+    for (int i = 0; i < bytes.length; i++) {
+      this.bytes[i] = (byte) (bytes[i] & mask[i]);
+    }
+  }
+
+  /**
+   * Check that the sequence of bytes can be compiled by a
+   * {@link SearchEngine}
+   * 
+   * @param searchBytes
+   * @return the specified bytes
+   * @throws IllegalArgumentException
+   *                                    if the sequence is null or empty
+   */
+  static byte[] checkSearchBytes(byte[] searchBytes) {
+    if (searchBytes == null || searchBytes.length == 0) {
+      throw new IllegalArgumentException("The sequence of bytes to search must not be null or empty.");
+    }
+    return searchBytes;
+  }
+
+  /**
+   * Create a pattern that matches only the specified bytes
+   * 
+   * @param bytes
+   * @return
+   */
+  public static BytePattern of(byte[] bytes) {
+    checkSearchBytes(bytes);
+    final byte[] mask = new byte[bytes.length];
+    for (int i = 0; i < mask.length; i++) {
+      mask[i] = (byte) 0xff;
+    }
+    return new BytePattern(bytes, mask);
+  }
+
+  /**
+   * Create a pattern that compares only the bits set in the mask
+   * 
+   * @param bytes
+   * @param mask
+   *              mask for each byte,0x00 means any byte
+   * @return
+   */
+  public static BytePattern of(byte[] bytes, byte[] mask) {
+    return new BytePattern(bytes, mask);
+  }
+
+  /**
+   * Create a pattern that matches the specified bytes ignoring the case of
+   * ASCII letters
+   * 
+   * @param bytes
+   * @return
+   */
+  public static BytePattern ofIgnoreCase(byte[] bytes) {
+    return of(bytes).ignoreCase();
+  }
+
+  /**
+   * Returns the pattern that ignores the case of the ASCII letters compared
+   * without mask<br>
+   * <br>
+   * Since upper and lower case letters differ only in the bit 0x20, the
+   * letters are compared with the mask 0xDF.
+   * 
+   * @return
+   */
+  public BytePattern ignoreCase() {
+
+    final byte[] foldedBytes = bytes.clone();
+    final byte[] foldedMask = mask.clone();
+
+    for (int i = 0; i < bytes.length; i++) {
+      final int b = bytes[i] & 0xff;
+      if (mask[i] == (byte) 0xff && ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z'))) {
+        foldedBytes[i] = (byte) (b & CASE_FOLDING_MASK);
+        foldedMask[i] = (byte) CASE_FOLDING_MASK;
+      }
+    }
+    return new BytePattern(foldedBytes, foldedMask);
+  }
+
+  /**
+   * Parse a pattern written in hexadecimal like "4D 5A ?? ?? 50 45"<br>
+   * <br>
+   * "?" means any 4 bits,so "??" is any byte and "4?" is any byte from 0x40
+   * to 0x4F.Whitespaces are ignored.
+   * 
+   * @param pattern
+   * @return
+   */
+  public static BytePattern parse(String pattern) {
+
+    final String digits = pattern.replaceAll("\\s", "");
+
+    if (digits.length() % 2 != 0) {
+      throw new RuntimeException("Invalid pattern '" + pattern + "'.Each byte must be written in 2 characters.");
+    }
+
+    final byte[] bytes = new byte[digits.length() / 2];
+    final byte[] mask = new byte[bytes.length];
+
+    for (int i = 0; i < digits.length(); i++) {
+
+      final char c = digits.charAt(i);
+      final int shift = (i % 2 == 0) ? 4 : 0;
+
+      if (c == '?') {
+        continue;
+      }
+
+      final int value = Character.digit(c, 16);
+
+      if (value < 0) {
+        throw new RuntimeException("Invalid pattern '" + pattern + "'.'" + c + "' is not a hexadecimal digit.");
+      }
+
+      bytes[i / 2] |= value << shift;
+      mask[i / 2] |= 0x0f << shift;
+    }
+    return new BytePattern(bytes, mask);
+  }
+
+  public int length() {
+    return bytes.length;
+  }
+
+  /**
+   * Returns the bytes to be compared(the bits not in the mask are 0)
+   * 
+   * @return
+   */
+  public byte[] getBytes() {
+    return bytes.clone();
+  }
+
+  public byte[] getMask() {
+    return mask.clone();
+  }
+
+  /**
+   * Compile this pattern into a matcher that finds the longest run of the
+   * bytes without mask by the specified engine and verifies the rest at the
+   * candidates
+   * 
+   * @param searchEngine
+   *                     engine to find the longest run of the bytes without
+   *                     mask
+   * @return
+   */
+  SearchEngine.Matcher compile(SearchEngine searchEngine) {
+    return new MaskedMatcher(bytes, mask, searchEngine);
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < bytes.length; i++) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      sb.append(toHexDigit(bytes[i] >> 4, mask[i] >> 4));
+      sb.append(toHexDigit(bytes[i], mask[i]));
+    }
+    return sb.toString();
+  }
+
+  private static char toHexDigit(int value, int mask) {
+    if ((mask & 0x0f) == 0) {
+      return '?';
+    }
+    return Character.toUpperCase(Character.forDigit(value & 0x0f, 16));
+  }
+}
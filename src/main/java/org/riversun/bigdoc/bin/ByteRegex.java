@@ -0,0 +1,785 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Regular expression over bytes compiled into a DFA<br>
+ * <br>
+ * Supports literals(matched as their UTF-8 bytes), '.'(any byte), character
+ * classes like [0-9A-F] and [^\x00-\x1f], \d \w \s \D \W \S, \xHH, groups
+ * (...) and (?:...), alternation '|' and the quantifiers * + ? {n} {n,}
+ * {n,m}. Anchors, backreferences and lazy quantifiers are not supported.<br>
+ * <br>
+ * A match is the longest sequence of bytes matching at a position, so a
+ * match costs one table lookup per byte. Instances are immutable and can be
+ * shared by threads.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class ByteRegex {
+
+  static final int DEAD_STATE = 0;
+
+  private static final int MAX_NUM_OF_DFA_STATES = 10000;
+
+  private static final int MAX_NUM_OF_NFA_STATES = 100000;
+
+  private static final int MAX_REPETITION = 1000;
+
+  private final String regex;
+
+  // transitions[state << 8 | byte] = next state
+  private final int[] transitions;
+
+  private final boolean[] accepting;
+
+  private final int initialState;
+
+  // bytes that can start a match
+  private final boolean[] firstBytes = new boolean[256];
+
+  // -1 means unbounded
+  private final int maxLength;
+
+  ByteRegex(String regex) {
+
+    this.regex = regex;
+
+    final Node node = new Parser(regex).parse();
+
+    if (node.minLength() == 0) {
+      throw new RuntimeException("The regular expression '" + regex + "' matches an empty sequence of bytes.");
+    }
+
+    this.maxLength = node.maxLength();
+
+    final Nfa nfa = new Nfa();
+    final int[] fragment = nfa.build(node);
+    final int acceptState = fragment[1];
+
+    // subset construction
+    final List<BitSet> dfaStates = new ArrayList<BitSet>();
+    final Map<BitSet, Integer> dfaStateIndex = new HashMap<BitSet, Integer>();
+    final List<int[]> rows = new ArrayList<int[]>();
+
+    final BitSet deadSet = new BitSet();
+    dfaStates.add(deadSet);
+    dfaStateIndex.put(deadSet, DEAD_STATE);
+    rows.add(new int[256]);
+
+    final BitSet initialSet = new BitSet();
+    initialSet.set(fragment[0]);
+    nfa.closure(initialSet);
+
+    dfaStates.add(initialSet);
+    dfaStateIndex.put(initialSet, 1);
+    this.initialState = 1;
+
+    for (int state = 1; state < dfaStates.size(); state++) {
+
+      final BitSet current = dfaStates.get(state);
+      final int[] row = new int[256];
+
+      for (int b = 0; b < 256; b++) {
+
+        final BitSet moved = new BitSet();
+
+        for (int s = current.nextSetBit(0); s >= 0; s = current.nextSetBit(s + 1)) {
+          final boolean[] byteSet = nfa.byteSets.get(s);
+          if (byteSet != null && byteSet[b]) {
+            moved.set(nfa.nexts.get(s));
+          }
+        }
+
+        if (moved.isEmpty()) {
+          row[b] = DEAD_STATE;
+          continue;
+        }
+
+        nfa.closure(moved);
+
+        Integer nextState = dfaStateIndex.get(moved);
+
+        if (nextState == null) {
+          if (dfaStates.size() >= MAX_NUM_OF_DFA_STATES) {
+            throw new RuntimeException("The regular expression '" + regex + "' is too complex.");
+          }
+          nextState = dfaStates.size();
+          dfaStates.add(moved);
+          dfaStateIndex.put(moved, nextState);
+        }
+        row[b] = nextState;
+      }
+      rows.add(row);
+    }
+
+    this.transitions = new int[rows.size() << 8];
+    this.accepting = new boolean[rows.size()];
+
+    for (int state = 0; state < rows.size(); state++) {
+      System.arraycopy(rows.get(state), 0, transitions, state << 8, 256);
+      accepting[state] = dfaStates.get(state).get(acceptState);
+    }
+
+    for (int b = 0; b < 256; b++) {
+      firstBytes[b] = transitions[(initialState << 8) | b] != DEAD_STATE;
+    }
+  }
+
+  /**
+   * Returns the end(exclusive) of the longest match starting at the index
+   * 
+   * @param buf
+   *              buffer to be scanned
+   * @param index
+   *              start of the match
+   * @param limit
+   *              the match must end at or before this index
+   * @return end of the match,'-1' means that it does not match
+   */
+  int matchAt(ByteBuffer buf, int index, int limit) {
+
+    final byte first = buf.get(index);
+
+    if (!firstBytes[first & 0xff]) {
+      return -1;
+    }
+
+    int state = initialState;
+    int end = -1;
+
+    for (int i = index; i < limit; i++) {
+      state = transitions[(state << 8) | (buf.get(i) & 0xff)];
+      if (state == DEAD_STATE) {
+        break;
+      }
+      if (accepting[state]) {
+        end = i + 1;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Returns the max length of a match
+   * 
+   * @return '-1' means unbounded
+   */
+  int maxLength() {
+    return maxLength;
+  }
+
+  @Override
+  public String toString() {
+    return regex;
+  }
+
+  /**
+   * Node of the syntax tree
+   */
+  private static abstract class Node {
+
+    abstract int minLength();
+
+    /**
+     * @return '-1' means unbounded
+     */
+    abstract int maxLength();
+  }
+
+  private static final class ByteSetNode extends Node {
+
+    final boolean[] byteSet;
+
+    ByteSetNode(boolean[] byteSet) {
+      this.byteSet = byteSet;
+    }
+
+    @Override
+    int minLength() {
+      return 1;
+    }
+
+    @Override
+    int maxLength() {
+      return 1;
+    }
+  }
+
+  private static final class ConcatNode extends Node {
+
+    final List<Node> children;
+
+    ConcatNode(List<Node> children) {
+      this.children = children;
+    }
+
+    @Override
+    int minLength() {
+      int length = 0;
+      for (Node child : children) {
+        length += child.minLength();
+      }
+      return length;
+    }
+
+    @Override
+    int maxLength() {
+      int length = 0;
+      for (Node child : children) {
+        final int childLength = child.maxLength();
+        if (childLength < 0) {
+          return -1;
+        }
+        length += childLength;
+      }
+      return length;
+    }
+  }
+
+  private static final class AltNode extends Node {
+
+    final List<Node> children;
+
+    AltNode(List<Node> children) {
+      this.children = children;
+    }
+
+    @Override
+    int minLength() {
+      int length = Integer.MAX_VALUE;
+      for (Node child : children) {
+        length = Math.min(length, child.minLength());
+      }
+      return length;
+    }
+
+    @Override
+    int maxLength() {
+      int length = 0;
+      for (Node child : children) {
+        final int childLength = child.maxLength();
+        if (childLength < 0) {
+          return -1;
+        }
+        length = Math.max(length, childLength);
+      }
+      return length;
+    }
+  }
+
+  private static final class RepeatNode extends Node {
+
+    final Node child;
+    final int min;
+
+    // -1 means unbounded
+    final int max;
+
+    RepeatNode(Node child, int min, int max) {
+      this.child = child;
+      this.min = min;
+      this.max = max;
+    }
+
+    @Override
+    int minLength() {
+      return child.minLength() * min;
+    }
+
+    @Override
+    int maxLength() {
+      final int childLength = child.maxLength();
+      if (childLength == 0 || max == 0) {
+        return 0;
+      }
+      if (childLength < 0 || max < 0) {
+        return -1;
+      }
+      final long length = (long) childLength * max;
+      return length > Integer.MAX_VALUE ? -1 : (int) length;
+    }
+  }
+
+  /**
+   * Thompson NFA.Each state has either a byte transition or epsilon
+   * transitions.
+   */
+  private static final class Nfa {
+
+    // null if the state has no byte transition
+    final List<boolean[]> byteSets = new ArrayList<boolean[]>();
+    final List<Integer> nexts = new ArrayList<Integer>();
+    final List<List<Integer>> epsilons = new ArrayList<List<Integer>>();
+
+    int newState() {
+      if (byteSets.size() >= MAX_NUM_OF_NFA_STATES) {
+        throw new RuntimeException("The regular expression is too large.");
+      }
+      byteSets.add(null);
+      nexts.add(-1);
+      epsilons.add(new ArrayList<Integer>(2));
+      return byteSets.size() - 1;
+    }
+
+    void epsilon(int from, int to) {
+      epsilons.get(from).add(to);
+    }
+
+    /**
+     * Build the states of the node
+     * 
+     * @return {start state, end state}
+     */
+    int[] build(Node node) {
+
+      if (node instanceof ByteSetNode) {
+        final int start = newState();
+        final int end = newState();
+        byteSets.set(start, ((ByteSetNode) node).byteSet);
+        nexts.set(start, end);
+        return new int[] { start, end };
+      }
+
+      if (node instanceof ConcatNode) {
+        final int start = newState();
+        int end = start;
+        for (Node child : ((ConcatNode) node).children) {
+          final int[] fragment = build(child);
+          epsilon(end, fragment[0]);
+          end = fragment[1];
+        }
+        return new int[] { start, end };
+      }
+
+      if (node instanceof AltNode) {
+        final int start = newState();
+        final int end = newState();
+        for (Node child : ((AltNode) node).children) {
+          final int[] fragment = build(child);
+          epsilon(start, fragment[0]);
+          epsilon(fragment[1], end);
+        }
+        return new int[] { start, end };
+      }
+
+      final RepeatNode repeat = (RepeatNode) node;
+
+      final int start = newState();
+      int end = start;
+
+      for (int i = 0; i < repeat.min; i++) {
+        final int[] fragment = build(repeat.child);
+        epsilon(end, fragment[0]);
+        end = fragment[1];
+      }
+
+      if (repeat.max < 0) {
+        final int[] fragment = build(repeat.child);
+        final int loopEnd = newState();
+        epsilon(end, fragment[0]);
+        epsilon(end, loopEnd);
+        epsilon(fragment[1], fragment[0]);
+        epsilon(fragment[1], loopEnd);
+        end = loopEnd;
+      } else {
+        for (int i = repeat.min; i < repeat.max; i++) {
+          final int[] fragment = build(repeat.child);
+          final int optionalEnd = newState();
+          epsilon(end, fragment[0]);
+          epsilon(end, optionalEnd);
+          epsilon(fragment[1], optionalEnd);
+          end = optionalEnd;
+        }
+      }
+      return new int[] { start, end };
+    }
+
+    /**
+     * Add the states reachable by epsilon transitions
+     */
+    void closure(BitSet states) {
+      final LinkedList<Integer> stack = new LinkedList<Integer>();
+      for (int s = states.nextSetBit(0); s >= 0; s = states.nextSetBit(s + 1)) {
+        stack.push(s);
+      }
+      while (!stack.isEmpty()) {
+        for (int next : epsilons.get(stack.pop())) {
+          if (!states.get(next)) {
+            states.set(next);
+            stack.push(next);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Recursive descent parser
+   */
+  private static final class Parser {
+
+    final String regex;
+    int pos;
+
+    Parser(String regex) {
+      this.regex = regex;
+    }
+
+    Node parse() {
+      final Node node = parseAlternation();
+      if (pos < regex.length()) {
+        throw error("Unmatched ')'");
+      }
+      return node;
+    }
+
+    private Node parseAlternation() {
+      final List<Node> children = new ArrayList<Node>();
+      children.add(parseConcatenation());
+      while (pos < regex.length() && regex.charAt(pos) == '|') {
+        pos++;
+        children.add(parseConcatenation());
+      }
+      return children.size() == 1 ? children.get(0) : new AltNode(children);
+    }
+
+    private Node parseConcatenation() {
+      final List<Node> children = new ArrayList<Node>();
+      while (pos < regex.length() && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+        children.add(parseRepetition());
+      }
+      return children.size() == 1 ? children.get(0) : new ConcatNode(children);
+    }
+
+    private Node parseRepetition() {
+
+      Node node = parseAtom();
+
+      while (pos < regex.length()) {
+
+        final char c = regex.charAt(pos);
+
+        final int min;
+        final int max;
+
+        if (c == '*') {
+          pos++;
+          min = 0;
+          max = -1;
+        } else if (c == '+') {
+          pos++;
+          min = 1;
+          max = -1;
+        } else if (c == '?') {
+          pos++;
+          min = 0;
+          max = 1;
+        } else if (c == '{') {
+          pos++;
+          min = parseNumber();
+          if (pos < regex.length() && regex.charAt(pos) == ',') {
+            pos++;
+            max = (pos < regex.length() && regex.charAt(pos) == '}') ? -1 : parseNumber();
+          } else {
+            max = min;
+          }
+          expect('}');
+          if (max >= 0 && max < min) {
+            throw error("Invalid repetition");
+          }
+        } else {
+          break;
+        }
+
+        if (pos < regex.length() && (regex.charAt(pos) == '?' || regex.charAt(pos) == '+')) {
+          throw error("Lazy and possessive quantifiers are not supported");
+        }
+
+        node = new RepeatNode(node, min, max);
+      }
+      return node;
+    }
+
+    private Node parseAtom() {
+
+      final char c = regex.charAt(pos++);
+
+      switch (c) {
+      case '(':
+        if (regex.startsWith("?:", pos)) {
+          pos += 2;
+        } else if (pos < regex.length() && regex.charAt(pos) == '?') {
+          throw error("Unsupported group");
+        }
+        final Node node = parseAlternation();
+        expect(')');
+        return node;
+      case '[':
+        return new ByteSetNode(parseClass());
+      case '.':
+        return new ByteSetNode(range(0x00, 0xff));
+      case '\\':
+        return parseEscape();
+      case '^':
+      case '$':
+        throw error("Anchors are not supported");
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw error("Dangling quantifier");
+      default:
+        final int codePoint = regex.codePointAt(pos - 1);
+        pos += Character.charCount(codePoint) - 1;
+        return literal(codePoint);
+      }
+    }
+
+    private Node parseEscape() {
+
+      final boolean[] byteSet = parseClassEscape();
+      if (byteSet != null) {
+        return new ByteSetNode(byteSet);
+      }
+      final int b = parseEscapedByte();
+      return new ByteSetNode(range(b, b));
+    }
+
+    /**
+     * Parse \d \w \s \D \W \S
+     * 
+     * @return null if it is not a class escape
+     */
+    private boolean[] parseClassEscape() {
+
+      if (pos >= regex.length()) {
+        throw error("Trailing backslash");
+      }
+
+      final char c = regex.charAt(pos);
+
+      final boolean[] byteSet;
+
+      switch (Character.toLowerCase(c)) {
+      case 'd':
+        byteSet = range('0', '9');
+        break;
+      case 'w':
+        byteSet = union(union(range('a', 'z'), range('A', 'Z')), union(range('0', '9'), range('_', '_')));
+        break;
+      case 's':
+        byteSet = union(range(' ', ' '), range(0x09, 0x0d));
+        break;
+      default:
+        return null;
+      }
+      pos++;
+      return Character.isUpperCase(c) ? negate(byteSet) : byteSet;
+    }
+
+    /**
+     * Parse the byte after a backslash
+     */
+    private int parseEscapedByte() {
+
+      final char c = regex.charAt(pos++);
+
+      switch (c) {
+      case 'x':
+        if (pos + 2 > regex.length()) {
+          throw error("Invalid \\x escape");
+        }
+        final int high = Character.digit(regex.charAt(pos), 16);
+        final int low = Character.digit(regex.charAt(pos + 1), 16);
+        if (high < 0 || low < 0) {
+          throw error("Invalid \\x escape");
+        }
+        pos += 2;
+        return high << 4 | low;
+      case 't':
+        return '\t';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 'f':
+        return '\f';
+      case 'e':
+        return 0x1b;
+      case '0':
+        return 0x00;
+      default:
+        if (Character.isLetterOrDigit(c) || c > 0x7f) {
+          throw error("Unsupported escape '\\" + c + "'");
+        }
+        return c;
+      }
+    }
+
+    private boolean[] parseClass() {
+
+      boolean negated = false;
+
+      if (pos < regex.length() && regex.charAt(pos) == '^') {
+        negated = true;
+        pos++;
+      }
+
+      boolean[] byteSet = new boolean[256];
+      boolean first = true;
+
+      while (true) {
+
+        if (pos >= regex.length()) {
+          throw error("Unclosed character class");
+        }
+
+        char c = regex.charAt(pos);
+
+        if (c == ']' && !first) {
+          pos++;
+          break;
+        }
+        first = false;
+        pos++;
+
+        final int from;
+
+        if (c == '\\') {
+          final boolean[] classEscape = parseClassEscape();
+          if (classEscape != null) {
+            byteSet = union(byteSet, classEscape);
+            continue;
+          }
+          from = parseEscapedByte();
+        } else {
+          from = toByte(c);
+        }
+
+        int to = from;
+
+        if (pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+          pos++;
+          c = regex.charAt(pos++);
+          if (c == '\\') {
+            to = parseEscapedByte();
+          } else {
+            to = toByte(c);
+          }
+          if (to < from) {
+            throw error("Invalid range in character class");
+          }
+        }
+        byteSet = union(byteSet, range(from, to));
+      }
+      return negated ? negate(byteSet) : byteSet;
+    }
+
+    /**
+     * Characters in a character class must be single bytes
+     */
+    private int toByte(char c) {
+      if (c > 0x7f) {
+        throw error("Use \\xHH for non-ASCII bytes in a character class");
+      }
+      return c;
+    }
+
+    private Node literal(int codePoint) {
+
+      if (codePoint <= 0x7f) {
+        return new ByteSetNode(range(codePoint, codePoint));
+      }
+
+      // non-ASCII characters are matched as their UTF-8 bytes
+      final byte[] bytes = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+      final List<Node> children = new ArrayList<Node>();
+      for (byte b : bytes) {
+        children.add(new ByteSetNode(range(b & 0xff, b & 0xff)));
+      }
+      return new ConcatNode(children);
+    }
+
+    private int parseNumber() {
+      final int start = pos;
+      while (pos < regex.length() && Character.isDigit(regex.charAt(pos))) {
+        pos++;
+      }
+      if (start == pos) {
+        throw error("Number expected");
+      }
+      final int number = Integer.parseInt(regex.substring(start, Math.min(pos, start + 9)));
+      if (pos - start > 9 || number > MAX_REPETITION) {
+        throw error("Too many repetitions");
+      }
+      return number;
+    }
+
+    private void expect(char c) {
+      if (pos >= regex.length() || regex.charAt(pos) != c) {
+        throw error("'" + c + "' expected");
+      }
+      pos++;
+    }
+
+    private RuntimeException error(String message) {
+      return new RuntimeException(message + " near index " + pos + " in the regular expression '" + regex + "'.");
+    }
+  }
+
+  private static boolean[] range(int from, int to) {
+    final boolean[] byteSet = new boolean[256];
+    for (int b = from; b <= to; b++) {
+      byteSet[b] = true;
+    }
+    return byteSet;
+  }
+
+  private static boolean[] union(boolean[] a, boolean[] b) {
+    final boolean[] byteSet = new boolean[256];
+    for (int i = 0; i < 256; i++) {
+      byteSet[i] = a[i] || b[i];
+    }
+    return byteSet;
+  }
+
+  private static boolean[] negate(boolean[] a) {
+    final boolean[] byteSet = new boolean[256];
+    for (int i = 0; i < 256; i++) {
+      byteSet[i] = !a[i];
+    }
+    return byteSet;
+  }
+}
@@ -0,0 +1,396 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Knows where the characters start in the bytes of a charset<br>
+ * <br>
+ * Used to reject the occurrences of encoded text that begin inside another
+ * character, like a Shift_JIS trail byte or an odd position of UTF-16.
+ * Whether a position is the start of a character is decided from the bytes
+ * just before it, without decoding the file from the beginning.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+abstract class CharBoundary {
+
+  // size of the bytes read backward at a time to find a character start
+  private static final int LOOKBACK_SIZE = 256;
+
+  final Charset charset;
+
+  // length of the byte order mark at the beginning of the file
+  final int bomLength;
+
+  CharBoundary(Charset charset, int bomLength) {
+    this.charset = charset;
+    this.bomLength = bomLength;
+  }
+
+  /**
+   * Returns the boundary of the charset of the file
+   * 
+   * @param charset
+   * @param f
+   *                the beginning of the file is read to detect the byte order
+   *                mark of UTF-16
+   * @return
+   */
+  static CharBoundary forCharset(Charset charset, File f) {
+
+    final String name = charset.name();
+
+    if (name.equals("UTF-8")) {
+      return new Utf8Boundary(charset);
+    } else if (name.equals("UTF-16")) {
+      // the byte order is decided by the byte order mark(big endian if
+      // nothing) as Java does
+      final int bom = readBom(f);
+      if (bom == 0xfffe) {
+        return new Utf16Boundary(StandardCharsets.UTF_16LE, 2);
+      }
+      return new Utf16Boundary(StandardCharsets.UTF_16BE, bom == 0xfeff ? 2 : 0);
+    } else if (name.equals("UTF-16BE") || name.equals("UTF-16LE")) {
+      return new Utf16Boundary(charset, 0);
+    } else if (name.equals("Shift_JIS") || name.equals("windows-31j")) {
+      return new DoubleByteBoundary(charset, 0x81, 0x9f, 0xe0, 0xfc);
+    } else if (name.equals("EUC-JP")) {
+      return new EucJpBoundary(charset);
+    } else if (name.equals("EUC-KR") || name.equals("GB2312")) {
+      return new DoubleByteBoundary(charset, 0xa1, 0xfe, 0xa1, 0xfe);
+    } else if (name.equals("GBK") || name.equals("Big5")) {
+      return new DoubleByteBoundary(charset, 0x81, 0xfe, 0x81, 0xfe);
+    } else if (charset.newEncoder().maxBytesPerChar() == 1.0f) {
+      return new SingleByteBoundary(charset);
+    }
+    throw new RuntimeException("Charset " + name + " is not supported.");
+  }
+
+  private static int readBom(File f) {
+
+    FileChannel readChannel = null;
+
+    try {
+      readChannel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+      final ByteBuffer buf = ByteBuffer.allocate(2);
+      readFully(readChannel, buf, 0);
+      if (buf.hasRemaining()) {
+        return -1;
+      }
+      return (buf.get(0) & 0xff) << 8 | (buf.get(1) & 0xff);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      if (readChannel != null) {
+        try {
+          readChannel.close();
+        } catch (IOException e) {
+        }
+      }
+    }
+  }
+
+  /**
+   * Encode the text into the bytes of the charset without byte order mark
+   * 
+   * @param text
+   * @return
+   */
+  byte[] encode(String text) {
+
+    final CharsetEncoder encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+
+    try {
+      final ByteBuffer encoded = encoder.encode(CharBuffer.wrap(text));
+      final byte[] bytes = new byte[encoded.remaining()];
+      encoded.get(bytes);
+      if (bytes.length == 0) {
+        throw new RuntimeException("The text is empty.");
+      }
+      return bytes;
+    } catch (CharacterCodingException e) {
+      throw new RuntimeException("The text cannot be encoded in " + charset.name() + ".", e);
+    }
+  }
+
+  /**
+   * Returns the number of bytes of the character starting with the byte
+   * 
+   * @param leadByte
+   *                 first byte of the character(0-255)
+   * @return
+   */
+  abstract int charLength(int leadByte);
+
+  /**
+   * Returns the number of Java chars of the character starting with the byte
+   */
+  int numOfJavaChars(int leadByte) {
+    return 1;
+  }
+
+  /**
+   * Returns the index of the first byte known to start a character in the
+   * bytes read backward,or -1 if there is no such byte
+   * 
+   * @param bytes
+   *                 bytes just before a position
+   * @param length
+   *                 number of bytes
+   * @param position
+   *                 position of the file of bytes[0]
+   */
+  abstract int findCharStart(byte[] bytes, int length, long position);
+
+  /**
+   * Returns the first position at or after the specified position where a
+   * character starts
+   * 
+   * @param readChannel
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  long charStartAtOrAfter(FileChannel readChannel, long position) throws IOException {
+
+    if (position <= bomLength) {
+      return bomLength;
+    }
+
+    int lookbackSize = LOOKBACK_SIZE;
+
+    while (true) {
+
+      final long from = Math.max(bomLength, position - lookbackSize);
+      final int length = (int) (position - from);
+
+      final byte[] bytes = new byte[length];
+      readFully(readChannel, ByteBuffer.wrap(bytes), from);
+
+      final int charStart = findCharStart(bytes, length, from);
+
+      if (charStart >= 0 || from == bomLength) {
+
+        // parse the characters forward from the character start
+        long pos = (charStart >= 0) ? from + charStart : bomLength;
+
+        while (pos < position) {
+          pos += charLength(bytes[(int) (pos - from)] & 0xff);
+        }
+        return pos;
+      }
+      lookbackSize *= 2;
+    }
+  }
+
+  /**
+   * Returns whether a character starts at the position
+   * 
+   * @param readChannel
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  boolean isCharStart(FileChannel readChannel, long position) throws IOException {
+    return charStartAtOrAfter(readChannel, position) == position;
+  }
+
+  private static void readFully(FileChannel readChannel, ByteBuffer buf, long position) throws IOException {
+    while (buf.hasRemaining()) {
+      final int read = readChannel.read(buf, position + buf.position());
+      if (read < 0) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Charsets whose every byte is a character
+   */
+  private static final class SingleByteBoundary extends CharBoundary {
+
+    SingleByteBoundary(Charset charset) {
+      super(charset, 0);
+    }
+
+    @Override
+    int charLength(int leadByte) {
+      return 1;
+    }
+
+    @Override
+    int findCharStart(byte[] bytes, int length, long position) {
+      return length - 1;
+    }
+  }
+
+  /**
+   * UTF-8 is self-synchronizing,a character starts at any byte other than
+   * 10xxxxxx
+   */
+  private static final class Utf8Boundary extends CharBoundary {
+
+    Utf8Boundary(Charset charset) {
+      super(charset, 0);
+    }
+
+    @Override
+    int charLength(int leadByte) {
+      if (leadByte < 0xc0) {
+        return 1;
+      } else if (leadByte < 0xe0) {
+        return 2;
+      } else if (leadByte < 0xf0) {
+        return 3;
+      } else if (leadByte < 0xf8) {
+        return 4;
+      }
+      return 1;
+    }
+
+    @Override
+    int numOfJavaChars(int leadByte) {
+      // supplementary characters are surrogate pairs in Java
+      return (leadByte >= 0xf0 && leadByte < 0xf8) ? 2 : 1;
+    }
+
+    @Override
+    int findCharStart(byte[] bytes, int length, long position) {
+      for (int i = length - 1; i >= 0; i--) {
+        if ((bytes[i] & 0xc0) != 0x80) {
+          return i;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * UTF-16 code units start at the even positions from the byte order mark
+   */
+  private static final class Utf16Boundary extends CharBoundary {
+
+    Utf16Boundary(Charset charset, int bomLength) {
+      super(charset, bomLength);
+    }
+
+    @Override
+    int charLength(int leadByte) {
+      return 2;
+    }
+
+    @Override
+    int findCharStart(byte[] bytes, int length, long position) {
+      // the last even position
+      return (int) ((length - 1) - ((position + length - 1 - bomLength) & 1));
+    }
+  }
+
+  /**
+   * Double byte charsets like Shift_JIS whose trail bytes can also be lead
+   * bytes<br>
+   * A byte which cannot be a lead byte ends a character(as a single byte
+   * character or a trail byte),so a character starts after it.
+   */
+  private static final class DoubleByteBoundary extends CharBoundary {
+
+    private final boolean[] leadBytes = new boolean[256];
+
+    DoubleByteBoundary(Charset charset, int leadFrom1, int leadTo1, int leadFrom2, int leadTo2) {
+      super(charset, 0);
+      for (int b = leadFrom1; b <= leadTo1; b++) {
+        leadBytes[b] = true;
+      }
+      for (int b = leadFrom2; b <= leadTo2; b++) {
+        leadBytes[b] = true;
+      }
+    }
+
+    @Override
+    int charLength(int leadByte) {
+      return leadBytes[leadByte] ? 2 : 1;
+    }
+
+    @Override
+    int findCharStart(byte[] bytes, int length, long position) {
+      for (int i = length - 1; i >= 0; i--) {
+        if (!leadBytes[bytes[i] & 0xff]) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * EUC-JP.Trail bytes are 0xA1-0xFE,so a byte below 0xA1 is a single byte
+   * character or the lead byte of a kana(0x8E) or a JIS X 0212 character
+   * (0x8F).
+   */
+  private static final class EucJpBoundary extends CharBoundary {
+
+    EucJpBoundary(Charset charset) {
+      super(charset, 0);
+    }
+
+    @Override
+    int charLength(int leadByte) {
+      if (leadByte == 0x8e) {
+        return 2;
+      } else if (leadByte == 0x8f) {
+        return 3;
+      } else if (leadByte >= 0xa1 && leadByte <= 0xfe) {
+        return 2;
+      }
+      return 1;
+    }
+
+    @Override
+    int findCharStart(byte[] bytes, int length, long position) {
+      for (int i = length - 1; i >= 0; i--) {
+        final int b = bytes[i] & 0xff;
+        if (b == 0x8e || b == 0x8f) {
+          return i;
+        } else if (b < 0xa1) {
+          return i + 1;
+        }
+      }
+      return -1;
+    }
+  }
+}
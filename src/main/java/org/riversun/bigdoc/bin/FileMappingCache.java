@@ -0,0 +1,513 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Cache of the files opened and the regions mapped by the searches<br>
+ * <br>
+ * Back-to-back searches on the same file reuse the open channel and the
+ * mapped regions instead of opening and mapping the file again.A file is
+ * opened again when its size or last modified time has changed.When the
+ * cache exceeds its limits,the least recently used files and regions are
+ * dropped.<br>
+ * <br>
+ * The cache can be shared by the searchers and is thread-safe.Closing the
+ * cache releases all the files,files still being searched are closed when
+ * their searches finish.A region dropped is unmapped as soon as the last
+ * search using it releases it.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class FileMappingCache implements Closeable {
+
+  public static final int DEFAULT_MAX_NUM_OF_FILES = 8;
+
+  public static final long DEFAULT_MAX_MAPPED_SIZE = 1024L * 1024L * 1024L;
+
+  private final int maxNumOfFiles;
+  private final long maxMappedSize;
+
+  // files in the order of access,the eldest is dropped first
+  private final LinkedHashMap<String, CachedFile> fileMap = new LinkedHashMap<String, CachedFile>(16, 0.75f, true);
+
+  // regions of all the files in the order of access
+  private final LinkedHashMap<Region, Region> regionMap = new LinkedHashMap<Region, Region>(16, 0.75f, true);
+
+  private long mappedSize;
+
+  public FileMappingCache() {
+    this(DEFAULT_MAX_NUM_OF_FILES, DEFAULT_MAX_MAPPED_SIZE);
+  }
+
+  /**
+   * @param maxNumOfFiles
+   *                      max number of files kept open
+   * @param maxMappedSize
+   *                      max total size(bytes) of the regions kept mapped
+   */
+  public FileMappingCache(int maxNumOfFiles, long maxMappedSize) {
+    if (maxNumOfFiles < 1) {
+      throw new RuntimeException("maxNumOfFiles must be greater than 0.");
+    }
+    if (maxMappedSize < 0) {
+      throw new RuntimeException("maxMappedSize must not be negative.");
+    }
+    this.maxNumOfFiles = maxNumOfFiles;
+    this.maxMappedSize = maxMappedSize;
+  }
+
+  /**
+   * Returns the number of files kept open
+   * 
+   * @return
+   */
+  public synchronized int getNumOfFiles() {
+    return fileMap.size();
+  }
+
+  /**
+   * Returns the total size(bytes) of the regions kept mapped
+   * 
+   * @return
+   */
+  public synchronized long getMappedSize() {
+    return mappedSize;
+  }
+
+  /**
+   * Drop the file from the cache
+   * 
+   * @param f
+   */
+  public synchronized void invalidate(File f) {
+    final CachedFile cachedFile = fileMap.remove(f.getAbsolutePath());
+    if (cachedFile != null) {
+      retire(cachedFile);
+    }
+  }
+
+  /**
+   * Drop all the files from the cache<br>
+   * The cache can still be used after closing,the files are opened again.
+   */
+  @Override
+  public synchronized void close() {
+    for (CachedFile cachedFile : fileMap.values()) {
+      retire(cachedFile);
+    }
+    fileMap.clear();
+  }
+
+  /**
+   * Open the file through the cache if given,otherwise open the file only for
+   * the caller
+   */
+  static MappedFile open(FileMappingCache cache, File f) throws IOException {
+    if (cache != null) {
+      return cache.acquire(f);
+    }
+    return new UncachedFile(FileChannel.open(f.toPath(), StandardOpenOption.READ));
+  }
+
+  MappedFile acquire(File f) throws IOException {
+
+    final String path = f.getAbsolutePath();
+    final long length = f.length();
+    final long lastModified = f.lastModified();
+
+    synchronized (this) {
+      final CachedFile cachedFile = lookup(path, length, lastModified);
+      if (cachedFile != null) {
+        return new Handle(cachedFile);
+      }
+    }
+
+    // open the file without holding the lock
+    final FileChannel channel = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+
+    synchronized (this) {
+
+      // another thread may have opened the file in the meantime
+      final CachedFile cachedFile = lookup(path, length, lastModified);
+      if (cachedFile != null) {
+        closeQuietly(channel);
+        return new Handle(cachedFile);
+      }
+
+      final CachedFile newFile = new CachedFile(channel, length, lastModified);
+      fileMap.put(path, newFile);
+
+      final Handle handle = new Handle(newFile);
+
+      while (fileMap.size() > maxNumOfFiles) {
+        final Iterator<CachedFile> eldest = fileMap.values().iterator();
+        retire(eldest.next());
+        eldest.remove();
+      }
+      return handle;
+    }
+  }
+
+  /**
+   * Returns the cached file if it has not been changed,a changed file is
+   * dropped.A file closed by an interrupted search is dropped too.
+   */
+  private CachedFile lookup(String path, long length, long lastModified) {
+    final CachedFile cachedFile = fileMap.get(path);
+    if (cachedFile == null) {
+      return null;
+    }
+    if (cachedFile.length == length && cachedFile.lastModified == lastModified && cachedFile.channel.isOpen()) {
+      return cachedFile;
+    }
+    fileMap.remove(path);
+    retire(cachedFile);
+    return null;
+  }
+
+  /**
+   * Returns the region of the file and count the caller as its user,or null
+   * if the region is not cached
+   */
+  private synchronized Region lookupRegion(CachedFile cachedFile, long position, int size) {
+    final Region region = cachedFile.findRegion(position, size);
+    if (region != null) {
+      // touch to mark as recently used
+      regionMap.get(region);
+      region.refCount++;
+    }
+    return region;
+  }
+
+  /**
+   * Cache the region mapped if it fits in the cache and count the caller as
+   * its user
+   * 
+   * @return the region,or null if the region is not cached
+   */
+  private synchronized Region addRegion(CachedFile cachedFile, long position, MappedByteBuffer buffer) {
+
+    if (cachedFile.retired || buffer.capacity() > maxMappedSize) {
+      return null;
+    }
+
+    final Region region = new Region(cachedFile, position, buffer);
+    region.refCount++;
+
+    cachedFile.maxRegionSize = Math.max(cachedFile.maxRegionSize, buffer.capacity());
+
+    final Region replaced = cachedFile.regions.put(position, region);
+    if (replaced != null) {
+      dropRegion(replaced);
+    }
+    regionMap.put(region, region);
+    mappedSize += buffer.capacity();
+
+    while (mappedSize > maxMappedSize) {
+      final Region eldest = regionMap.keySet().iterator().next();
+      eldest.file.regions.remove(eldest.position);
+      dropRegion(eldest);
+    }
+    return region;
+  }
+
+  /**
+   * Remove the region from the cache and unmap it unless a search is using
+   * it
+   */
+  private void dropRegion(Region region) {
+    if (regionMap.remove(region) != null) {
+      mappedSize -= region.buffer.capacity();
+    }
+    region.dropped = true;
+    if (region.refCount == 0) {
+      BufferUnmapper.unmap(region.buffer);
+    }
+  }
+
+  /**
+   * Unmap the region if it has been dropped and the caller was its last user
+   */
+  private synchronized void releaseRegion(Region region) {
+    region.refCount--;
+    if (region.refCount == 0 && region.dropped) {
+      BufferUnmapper.unmap(region.buffer);
+    }
+  }
+
+  /**
+   * Drop the regions of the file and close it unless it is being searched
+   */
+  private void retire(CachedFile cachedFile) {
+    cachedFile.retired = true;
+    for (Region region : cachedFile.regions.values()) {
+      dropRegion(region);
+    }
+    cachedFile.regions.clear();
+    if (cachedFile.refCount == 0) {
+      closeQuietly(cachedFile.channel);
+    }
+  }
+
+  private synchronized void release(CachedFile cachedFile) {
+    cachedFile.refCount--;
+    if (cachedFile.refCount == 0 && cachedFile.retired) {
+      closeQuietly(cachedFile.channel);
+    }
+  }
+
+  private static void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+    }
+  }
+
+  /**
+   * File opened for a search<br>
+   * Close it when the search finishes.
+   */
+  static abstract class MappedFile implements Closeable {
+
+    abstract FileChannel channel();
+
+    long size() throws IOException {
+      return channel().size();
+    }
+
+    /**
+     * Map the region of the file read-only<br>
+     * The buffer returned is only used by the caller,its position and limit
+     * can be changed.
+     */
+    abstract ByteBuffer map(long position, int size) throws IOException;
+
+    /**
+     * Unmap the buffer returned by #map unless it is kept by the cache
+     */
+    abstract void unmap(ByteBuffer buf);
+
+    @Override
+    public abstract void close();
+  }
+
+  private static final class UncachedFile extends MappedFile {
+
+    private final FileChannel channel;
+
+    UncachedFile(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    FileChannel channel() {
+      return channel;
+    }
+
+    @Override
+    ByteBuffer map(long position, int size) throws IOException {
+      return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    @Override
+    void unmap(ByteBuffer buf) {
+      BufferUnmapper.unmap(buf);
+    }
+
+    @Override
+    public void close() {
+      closeQuietly(channel);
+    }
+  }
+
+  private final class Handle extends MappedFile {
+
+    private final CachedFile cachedFile;
+
+    // buffers mapped for this handle only
+    private final Set<ByteBuffer> uncachedBuffers = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    // cached regions by the buffers returned for them
+    private final Map<ByteBuffer, Region> usedRegions = new IdentityHashMap<ByteBuffer, Region>();
+
+    private boolean closed;
+
+    // call with the lock of the cache
+    Handle(CachedFile cachedFile) {
+      this.cachedFile = cachedFile;
+      cachedFile.refCount++;
+    }
+
+    @Override
+    FileChannel channel() {
+      return cachedFile.channel;
+    }
+
+    @Override
+    ByteBuffer map(long position, int size) throws IOException {
+
+      final Region cached = lookupRegion(cachedFile, position, size);
+      if (cached != null) {
+        return use(cached, position, size);
+      }
+
+      final MappedByteBuffer buffer = cachedFile.channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+
+      final Region added = addRegion(cachedFile, position, buffer);
+      if (added != null) {
+        return use(added, position, size);
+      }
+      uncachedBuffers.add(buffer);
+      return buffer;
+    }
+
+    private ByteBuffer use(Region region, long position, int size) {
+      final ByteBuffer buf = region.slice(position, size);
+      usedRegions.put(buf, region);
+      return buf;
+    }
+
+    @Override
+    void unmap(ByteBuffer buf) {
+      final Region region = usedRegions.remove(buf);
+      if (region != null) {
+        releaseRegion(region);
+      } else if (uncachedBuffers.remove(buf)) {
+        BufferUnmapper.unmap(buf);
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (FileMappingCache.this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+      }
+      for (ByteBuffer buf : uncachedBuffers) {
+        BufferUnmapper.unmap(buf);
+      }
+      uncachedBuffers.clear();
+      for (Region region : usedRegions.values()) {
+        releaseRegion(region);
+      }
+      usedRegions.clear();
+      release(cachedFile);
+    }
+  }
+
+  private static final class CachedFile {
+
+    final FileChannel channel;
+    final long length;
+    final long lastModified;
+
+    // regions by their positions
+    final TreeMap<Long, Region> regions = new TreeMap<Long, Region>();
+
+    // size of the largest region ever added
+    int maxRegionSize;
+
+    // number of the searches using the file
+    int refCount;
+
+    // true if dropped from the cache
+    boolean retired;
+
+    CachedFile(FileChannel channel, long length, long lastModified) {
+      this.channel = channel;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * Returns a region that covers the range<br>
+     * <br>
+     * Searches with the different block sizes map regions overlapping each
+     * other,so a larger region before the nearest one may cover the range.
+     */
+    Region findRegion(long position, int size) {
+      Map.Entry<Long, Region> entry = regions.floorEntry(position);
+      // the regions starting before this cannot reach the end of the range
+      final long minPosition = position + size - maxRegionSize;
+      while (entry != null && entry.getKey() >= minPosition) {
+        if (entry.getValue().contains(position, size)) {
+          return entry.getValue();
+        }
+        entry = regions.lowerEntry(entry.getKey());
+      }
+      return null;
+    }
+  }
+
+  private static final class Region {
+
+    final CachedFile file;
+    final long position;
+    final MappedByteBuffer buffer;
+
+    // number of the buffers returned for this region and not released yet
+    int refCount;
+
+    // true if dropped from the cache,unmapped when refCount reaches 0
+    boolean dropped;
+
+    Region(CachedFile file, long position, MappedByteBuffer buffer) {
+      this.file = file;
+      this.position = position;
+      this.buffer = buffer;
+    }
+
+    boolean contains(long position, int size) {
+      return this.position <= position && position + size <= this.position + buffer.capacity();
+    }
+
+    ByteBuffer slice(long position, int size) {
+      final ByteBuffer buf = buffer.duplicate();
+      final int offset = (int) (position - this.position);
+      // cast to Buffer to run on Java 8
+      ((Buffer) buf).limit(offset + size);
+      ((Buffer) buf).position(offset);
+      return buf.slice();
+    }
+  }
+}
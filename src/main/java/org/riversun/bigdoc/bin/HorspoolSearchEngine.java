@@ -0,0 +1,129 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SearchEngine based on Boyer-Moore-Horspool algorithm<br>
+ * <br>
+ * Compares from the last byte of the sequence and skips ahead using a bad
+ * character table, so the longer the sequence is the fewer bytes are read.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class HorspoolSearchEngine implements SearchEngine {
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return new HorspoolMatcher(searchBytes);
+  }
+
+  private static final class HorspoolMatcher implements Matcher {
+
+    private final byte[] pattern;
+    private final int[] skipTable = new int[256];
+
+    // skip table to scan backward, based on the first byte of the window
+    private final int[] reverseSkipTable = new int[256];
+
+    HorspoolMatcher(byte[] searchBytes) {
+      this.pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+
+      final int lengthOfPattern = pattern.length;
+
+      for (int i = 0; i < skipTable.length; i++) {
+        skipTable[i] = lengthOfPattern;
+      }
+      for (int i = 0; i < lengthOfPattern - 1; i++) {
+        skipTable[pattern[i] & 0xff] = lengthOfPattern - 1 - i;
+      }
+
+      for (int i = 0; i < reverseSkipTable.length; i++) {
+        reverseSkipTable[i] = lengthOfPattern;
+      }
+      for (int i = lengthOfPattern - 1; i > 0; i--) {
+        reverseSkipTable[pattern[i] & 0xff] = i;
+      }
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final byte lastByte = pattern[lastIndexOfPattern];
+      final int lastIndex = toIndex - pattern.length;
+
+      int i = fromIndex;
+
+      while (i <= lastIndex) {
+
+        final byte b = buf.get(i + lastIndexOfPattern);
+
+        if (b == lastByte) {
+          int j = lastIndexOfPattern - 1;
+          while (j >= 0 && buf.get(i + j) == pattern[j]) {
+            j--;
+          }
+          if (j < 0) {
+            return i;
+          }
+        }
+        i += skipTable[b & 0xff];
+      }
+      return -1;
+    }
+
+    @Override
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final byte firstByte = pattern[0];
+
+      int i = toIndex - pattern.length;
+
+      while (i >= fromIndex) {
+
+        final byte b = buf.get(i);
+
+        if (b == firstByte) {
+          int j = 1;
+          while (j < pattern.length && buf.get(i + j) == pattern[j]) {
+            j++;
+          }
+          if (j == pattern.length) {
+            return i;
+          }
+        }
+        i -= reverseSkipTable[b & 0xff];
+      }
+      return -1;
+    }
+
+    @Override
+    public int length() {
+      return pattern.length;
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+/**
+ * How the file is read by the searchers
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public enum IoBackend {
+
+  /**
+   * Map the file into memory and scan it in place(default)
+   */
+  MMAP,
+
+  /**
+   * Read the file by FileChannel#read(ByteBuffer,long) into direct buffers
+   * reused across the searches<br>
+   * Suitable for network file systems and containers with limited memory
+   * where mapping the file is slow or counted against the memory limit.
+   */
+  PREAD,
+
+  /**
+   * Read the file by RandomAccessFile into heap buffers<br>
+   * Only the forward search of a sequence of bytes has this path,the other
+   * searches read the file as PREAD does.
+   */
+  LEGACY,
+
+  /**
+   * Map the whole range of a worker as one MemorySegment instead of the
+   * regions of MappedByteBuffer<br>
+   * Available on JDK 21 and later(see
+   * {@link BinFileSearcher#isMemorySegmentAvailable()}),otherwise the file is
+   * read as MMAP does.The mappings are not kept by the file mapping cache.
+   */
+  SEGMENT
+}
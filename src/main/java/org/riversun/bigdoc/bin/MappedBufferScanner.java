@@ -0,0 +1,117 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Scan kernel that searches a sequence of bytes directly inside a
+ * ByteBuffer(typically a MappedByteBuffer)<br>
+ * <br>
+ * The buffer is read with absolute get, so neither the content nor the
+ * position/limit of the buffer is copied or changed.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class MappedBufferScanner {
+
+  private MappedBufferScanner() {
+  }
+
+  /**
+   * Returns the index within the buffer of the first occurrence of the
+   * specified bytes between fromIndex(inclusive) and toIndex(exclusive)
+   * 
+   * @param buf
+   *                    buffer to be scanned
+   * @param fromIndex
+   *                    index to start scanning
+   * @param toIndex
+   *                    the match must end before this index
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return index of the first occurrence. '-1' means that it was not found.
+   */
+  static int indexOf(ByteBuffer buf, int fromIndex, int toIndex, byte[] searchBytes) {
+
+    final int lengthOfSearchBytes = searchBytes.length;
+    final int lastIndex = toIndex - lengthOfSearchBytes;
+    final byte firstByte = searchBytes[0];
+
+    for (int i = fromIndex; i <= lastIndex; i++) {
+
+      if (buf.get(i) != firstByte) {
+        continue;
+      }
+
+      int j = 1;
+      while (j < lengthOfSearchBytes && buf.get(i + j) == searchBytes[j]) {
+        j++;
+      }
+
+      if (j == lengthOfSearchBytes) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index within the buffer of the last occurrence of the
+   * specified bytes between fromIndex(inclusive) and toIndex(exclusive)
+   * 
+   * @param buf
+   *                    buffer to be scanned
+   * @param fromIndex
+   *                    the match must start at or after this index
+   * @param toIndex
+   *                    the match must end before this index
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return index of the last occurrence. '-1' means that it was not found.
+   */
+  static int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex, byte[] searchBytes) {
+
+    final int lengthOfSearchBytes = searchBytes.length;
+    final byte firstByte = searchBytes[0];
+
+    for (int i = toIndex - lengthOfSearchBytes; i >= fromIndex; i--) {
+
+      if (buf.get(i) != firstByte) {
+        continue;
+      }
+
+      int j = 1;
+      while (j < lengthOfSearchBytes && buf.get(i + j) == searchBytes[j]) {
+        j++;
+      }
+
+      if (j == lengthOfSearchBytes) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
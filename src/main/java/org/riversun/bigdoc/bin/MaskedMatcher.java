@@ -0,0 +1,307 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Matcher for a sequence of bytes with masks<br>
+ * <br>
+ * If the sequence has a run of 2 or more bytes without mask, the longest run
+ * (the anchor) is searched by the matcher of a {@link SearchEngine} and the
+ * masked bytes are compared only at the candidates.<br>
+ * Otherwise,for example when ASCII letters are folded for case-insensitive
+ * search, the buffer is read 8 bytes at a time and the first and the last
+ * masked bytes are compared under their masks with SWAR bit operations, so
+ * both cases of a letter are tested in a single pass.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class MaskedMatcher implements SearchEngine.Matcher {
+
+  private static final int MIN_ANCHOR_LENGTH = 2;
+
+  private final byte[] bytes;
+  private final byte[] mask;
+
+  // null if the anchor is too short
+  private final SearchEngine.Matcher anchorMatcher;
+
+  // index of the anchor within the pattern
+  private final int anchorOffset;
+  private final int anchorLength;
+
+  // indexes of the first and the last bytes compared by SWAR,-1 if every
+  // byte is masked out
+  private final int firstIndex;
+  private final int lastIndex;
+
+  private final long firstMaskPattern;
+  private final long firstBytePattern;
+  private final long lastMaskPattern;
+  private final long lastBytePattern;
+
+  MaskedMatcher(byte[] bytes, byte[] mask, SearchEngine searchEngine) {
+
+    this.bytes = bytes.clone();
+    this.mask = mask.clone();
+
+    // find the longest run of the bytes without mask
+    int bestOffset = 0;
+    int bestLength = 0;
+
+    int runOffset = 0;
+
+    for (int i = 0; i <= mask.length; i++) {
+      if (i == mask.length || mask[i] != (byte) 0xff) {
+        if (i - runOffset > bestLength) {
+          bestOffset = runOffset;
+          bestLength = i - runOffset;
+        }
+        runOffset = i + 1;
+      }
+    }
+
+    int first = -1;
+    int last = -1;
+
+    for (int i = 0; i < mask.length; i++) {
+      if (mask[i] != 0) {
+        if (first < 0) {
+          first = i;
+        }
+        last = i;
+      }
+    }
+
+    this.firstIndex = first;
+    this.lastIndex = last;
+
+    if (bestLength >= MIN_ANCHOR_LENGTH) {
+      final byte[] anchor = new byte[bestLength];
+      System.arraycopy(bytes, bestOffset, anchor, 0, bestLength);
+      this.anchorMatcher = searchEngine.compile(anchor);
+      this.anchorOffset = bestOffset;
+      this.anchorLength = bestLength;
+    } else {
+      this.anchorMatcher = null;
+      this.anchorOffset = 0;
+      this.anchorLength = 0;
+    }
+
+    if (first >= 0) {
+      this.firstMaskPattern = SwarSearchEngine.broadcast(mask[first]);
+      this.firstBytePattern = SwarSearchEngine.broadcast(bytes[first]);
+      this.lastMaskPattern = SwarSearchEngine.broadcast(mask[last]);
+      this.lastBytePattern = SwarSearchEngine.broadcast(bytes[last]);
+    } else {
+      this.firstMaskPattern = 0;
+      this.firstBytePattern = 0;
+      this.lastMaskPattern = 0;
+      this.lastBytePattern = 0;
+    }
+  }
+
+  @Override
+  public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+    final int lastStart = toIndex - bytes.length;
+
+    if (fromIndex > lastStart) {
+      return -1;
+    }
+
+    if (anchorMatcher == null) {
+      return indexOfBySwar(buf, fromIndex, lastStart);
+    }
+
+    // the anchor is searched only where the whole pattern fits
+    final int anchorFromIndex = fromIndex + anchorOffset;
+    final int anchorToIndex = lastStart + anchorOffset + anchorLength;
+
+    int anchorPos = anchorMatcher.indexOf(buf, anchorFromIndex, anchorToIndex);
+
+    while (anchorPos >= 0) {
+      final int candidate = anchorPos - anchorOffset;
+      if (matchesMasked(buf, candidate)) {
+        return candidate;
+      }
+      anchorPos = anchorMatcher.indexOf(buf, anchorPos + 1, anchorToIndex);
+    }
+    return -1;
+  }
+
+  @Override
+  public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+    final int lastStart = toIndex - bytes.length;
+
+    if (fromIndex > lastStart) {
+      return -1;
+    }
+
+    if (anchorMatcher == null) {
+      return lastIndexOfBySwar(buf, fromIndex, lastStart);
+    }
+
+    final int anchorFromIndex = fromIndex + anchorOffset;
+    final int anchorToIndex = lastStart + anchorOffset + anchorLength;
+
+    int anchorPos = anchorMatcher.lastIndexOf(buf, anchorFromIndex, anchorToIndex);
+
+    while (anchorPos >= 0) {
+      final int candidate = anchorPos - anchorOffset;
+      if (matchesMasked(buf, candidate)) {
+        return candidate;
+      }
+      // the previous candidate must start before this one
+      anchorPos = anchorMatcher.lastIndexOf(buf, anchorFromIndex, anchorPos + anchorLength - 1);
+    }
+    return -1;
+  }
+
+  @Override
+  public int length() {
+    return bytes.length;
+  }
+
+  /**
+   * Find the first candidate in [fromIndex,lastStart] 8 positions at a time
+   */
+  private int indexOfBySwar(ByteBuffer buf, int fromIndex, int lastStart) {
+
+    if (firstIndex < 0) {
+      // every byte is masked out
+      return fromIndex;
+    }
+
+    final boolean bigEndian = (buf.order() == ByteOrder.BIG_ENDIAN);
+
+    int i = fromIndex;
+
+    // while all the 8 positions of the word can be candidates
+    while (i + Long.BYTES - 1 <= lastStart) {
+
+      long candidates = candidates(buf, i);
+
+      while (candidates != 0) {
+
+        final int byteIndex;
+        if (bigEndian) {
+          byteIndex = Long.numberOfLeadingZeros(candidates) >>> 3;
+          candidates &= ~(0x8000000000000000L >>> (byteIndex << 3));
+        } else {
+          byteIndex = Long.numberOfTrailingZeros(candidates) >>> 3;
+          candidates &= candidates - 1;
+        }
+
+        if (matchesMasked(buf, i + byteIndex)) {
+          return i + byteIndex;
+        }
+      }
+      i += Long.BYTES;
+    }
+
+    // test the rest which is shorter than a word
+    for (; i <= lastStart; i++) {
+      if (matchesMasked(buf, i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Find the last candidate in [fromIndex,lastStart] 8 positions at a time
+   */
+  private int lastIndexOfBySwar(ByteBuffer buf, int fromIndex, int lastStart) {
+
+    if (firstIndex < 0) {
+      return lastStart;
+    }
+
+    final boolean bigEndian = (buf.order() == ByteOrder.BIG_ENDIAN);
+
+    int i = lastStart - (Long.BYTES - 1);
+
+    while (i >= fromIndex) {
+
+      long candidates = candidates(buf, i);
+
+      // test the candidates from the highest address
+      while (candidates != 0) {
+
+        final int byteIndex;
+        if (bigEndian) {
+          byteIndex = 7 - (Long.numberOfTrailingZeros(candidates) >>> 3);
+          candidates &= candidates - 1;
+        } else {
+          byteIndex = (63 - Long.numberOfLeadingZeros(candidates)) >>> 3;
+          candidates &= ~(0x80L << (byteIndex << 3));
+        }
+
+        if (matchesMasked(buf, i + byteIndex)) {
+          return i + byteIndex;
+        }
+      }
+      i -= Long.BYTES;
+    }
+
+    for (i += Long.BYTES - 1; i >= fromIndex; i--) {
+      if (matchesMasked(buf, i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the word whose byte has the highest bit set where the first and
+   * the last masked bytes of the pattern match at the position
+   */
+  private long candidates(ByteBuffer buf, int index) {
+    final long firstByteMatches = SwarSearchEngine.zeroBytes((buf.getLong(index + firstIndex) & firstMaskPattern) ^ firstBytePattern);
+    final long lastByteMatches = SwarSearchEngine.zeroBytes((buf.getLong(index + lastIndex) & lastMaskPattern) ^ lastBytePattern);
+    return firstByteMatches & lastByteMatches;
+  }
+
+  /**
+   * Compare the bytes other than the anchor under their masks
+   */
+  private boolean matchesMasked(ByteBuffer buf, int index) {
+    for (int j = 0; j < bytes.length; j++) {
+      if (j == anchorOffset && anchorMatcher != null) {
+        // the anchor is already compared
+        j += anchorLength - 1;
+        continue;
+      }
+      if ((byte) (buf.get(index + j) & mask[j]) != bytes[j]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,122 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Receives the positions found by a search in the order of the search and
+ * decides whether the search should go on<br>
+ * <br>
+ * Depending on the mode, it keeps the positions or only counts them, and
+ * stops the search when the limit of the number of positions is reached or
+ * when a position belongs to the next block.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class PointerCollector {
+
+  static final long NO_LIMIT = -1;
+
+  // null in count only mode
+  private final PointerList pointerList;
+
+  private final long maxNumOfPointers;
+
+  // positions from here are not collected
+  private final long pointerLimit;
+
+  private long numOfPointers;
+
+  /**
+   * @param countOnly
+   *                         true not to keep the positions
+   * @param maxNumOfPointers
+   *                         max number of positions to be collected,
+   *                         {@link #NO_LIMIT} means no limit
+   * @param pointerLimit
+   *                         positions from here are not collected
+   */
+  PointerCollector(boolean countOnly, long maxNumOfPointers, long pointerLimit) {
+    this.pointerList = countOnly ? null : new PointerList();
+    this.maxNumOfPointers = maxNumOfPointers;
+    this.pointerLimit = pointerLimit;
+  }
+
+  /**
+   * Collects all positions
+   */
+  PointerCollector() {
+    this(false, NO_LIMIT, Long.MAX_VALUE);
+  }
+
+  /**
+   * Collect a position
+   * 
+   * @param pointer
+   * @return true to continue searching,false to stop searching
+   */
+  boolean add(long pointer) {
+
+    if (pointer >= pointerLimit) {
+      return false;
+    }
+
+    numOfPointers++;
+
+    if (pointerList != null) {
+      pointerList.add(pointer);
+    }
+
+    return !isFull();
+  }
+
+  boolean isFull() {
+    return maxNumOfPointers != NO_LIMIT && numOfPointers >= maxNumOfPointers;
+  }
+
+  long getNumOfPointers() {
+    return numOfPointers;
+  }
+
+  /**
+   * Returns the positions collected
+   * 
+   * @return empty list in count only mode
+   */
+  PointerList getPointerList() {
+    return (pointerList != null) ? pointerList : new PointerList();
+  }
+
+  /**
+   * Returns the positions collected so far for progress listeners
+   * 
+   * @return
+   */
+  List<Long> asList() {
+    return (pointerList != null) ? pointerList.asList() : Collections.<Long> emptyList();
+  }
+}
@@ -0,0 +1,204 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+/**
+ * Growable list of positions(pointers) backed by a primitive long array<br>
+ * <br>
+ * Used to hold the search results without boxing each position into a Long.
+ * This class is not thread-safe.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class PointerList {
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private static final long[] EMPTY = new long[0];
+
+  private long[] pointers;
+  private int size;
+
+  public PointerList() {
+    this.pointers = EMPTY;
+  }
+
+  public PointerList(int initialCapacity) {
+    this.pointers = new long[initialCapacity];
+  }
+
+  /**
+   * Append a position
+   * 
+   * @param pointer
+   */
+  public void add(long pointer) {
+    if (size == pointers.length) {
+      grow(size + 1);
+    }
+    pointers[size++] = pointer;
+  }
+
+  /**
+   * Append all positions of the specified list
+   * 
+   * @param other
+   */
+  public void addAll(PointerList other) {
+    if (size + other.size > pointers.length) {
+      grow(size + other.size);
+    }
+    System.arraycopy(other.pointers, 0, pointers, size, other.size);
+    size += other.size;
+  }
+
+  /**
+   * Returns the position at the specified index
+   * 
+   * @param index
+   * @return
+   */
+  public long get(int index) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return pointers[index];
+  }
+
+  /**
+   * Replace the position at the specified index
+   * 
+   * @param index
+   * @param pointer
+   */
+  public void set(int index, long pointer) {
+    if (index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    pointers[index] = pointer;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Remove the positions from the specified index to the end
+   * 
+   * @param newSize
+   */
+  public void truncate(int newSize) {
+    if (newSize < 0 || newSize > size) {
+      throw new IndexOutOfBoundsException("Size: " + newSize);
+    }
+    size = newSize;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Sort positions in ascending order
+   */
+  public void sort() {
+    Arrays.sort(pointers, 0, size);
+  }
+
+  /**
+   * Returns a copy of the positions as an array
+   * 
+   * @return
+   */
+  public long[] toArray() {
+    return Arrays.copyOf(pointers, size);
+  }
+
+  /**
+   * Returns a sequential stream over the positions
+   * 
+   * @return
+   */
+  public LongStream stream() {
+    return Arrays.stream(pointers, 0, size);
+  }
+
+  /**
+   * Returns a new modifiable list of the positions
+   * 
+   * @return
+   */
+  public List<Long> toList() {
+    final List<Long> list = new ArrayList<Long>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(pointers[i]);
+    }
+    return list;
+  }
+
+  /**
+   * Returns an unmodifiable view of the positions without copying.<br>
+   * Each position is boxed only when it is accessed.
+   * 
+   * @return
+   */
+  public List<Long> asList() {
+    return new AbstractList<Long>() {
+
+      @Override
+      public Long get(int index) {
+        return PointerList.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  private void grow(int minCapacity) {
+    int newCapacity = Math.max(DEFAULT_CAPACITY, pointers.length + (pointers.length >> 1));
+    if (newCapacity < minCapacity) {
+      newCapacity = minCapacity;
+    }
+    pointers = Arrays.copyOf(pointers, newCapacity);
+  }
+
+  @Override
+  public String toString() {
+    return asList().toString();
+  }
+}
@@ -0,0 +1,90 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads each window by FileChannel#read(ByteBuffer,long) into a direct buffer
+ * taken from the pool instead of mapping the file<br>
+ * <br>
+ * The buffer is reused for the windows and returned to the pool by #close.
+ * A window beyond the end of the file throws EOFException.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class PreadWindowMapper implements WindowMapper {
+
+  private final FileChannel channel;
+
+  private final BufferPool bufferPool;
+
+  private ByteBuffer buffer;
+
+  PreadWindowMapper(FileChannel channel, BufferPool bufferPool) {
+    this.channel = channel;
+    this.bufferPool = bufferPool;
+  }
+
+  @Override
+  public ByteBuffer map(long position, int size) throws IOException {
+
+    if (buffer == null || buffer.capacity() < size) {
+      releaseBuffer();
+      buffer = bufferPool.acquire(size);
+    }
+
+    // cast to Buffer to run on Java 8
+    ((Buffer) buffer).clear();
+    ((Buffer) buffer).limit(size);
+
+    // the pooled buffer may hold the bytes of another window,so a window is
+    // never returned partially filled
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("The file ended at " + (position + buffer.position()) + " while reading the window [" + position + "," + (position + size) + ").");
+      }
+    }
+
+    ((Buffer) buffer).flip();
+    return buffer;
+  }
+
+  private void releaseBuffer() {
+    if (buffer != null) {
+      bufferPool.release(buffer);
+      buffer = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    releaseBuffer();
+  }
+}
@@ -0,0 +1,104 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Maps a large region of the range to be searched at once and returns the
+ * windows to be scanned inside it<br>
+ * <br>
+ * A new region is mapped only when a window runs out of the current region,
+ * so a range up to the size of a region is mapped only once instead of once
+ * per window.The previous region is unmapped when the next one is mapped and
+ * the last one is unmapped by #close.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class RegionMapper implements WindowMapper {
+
+  /**
+   * Max size of a region,the limit of a MappedByteBuffer
+   */
+  static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+  private final FileMappingCache.MappedFile mappedFile;
+
+  // range to be searched,endPosition is exclusive
+  private final long startPosition;
+  private final long endPosition;
+
+  private final int regionSize;
+
+  // true if the windows are requested from the end of the range backward
+  private final boolean reverse;
+
+  private ByteBuffer region;
+  private long regionPosition;
+
+  RegionMapper(FileMappingCache.MappedFile mappedFile, long startPosition, long endPosition, int regionSize, boolean reverse) {
+    this.mappedFile = mappedFile;
+    this.startPosition = startPosition;
+    this.endPosition = endPosition;
+    this.regionSize = regionSize;
+    this.reverse = reverse;
+  }
+
+  @Override
+  public ByteBuffer map(long position, int size) throws IOException {
+
+    if (region == null || position < regionPosition || position + size > regionPosition + region.capacity()) {
+
+      unmapRegion();
+
+      final long sizeToRange = reverse ? (position + size - startPosition) : (endPosition - position);
+      final int mapSize = (int) Math.max(size, Math.min(regionSize, sizeToRange));
+
+      regionPosition = reverse ? (position + size - mapSize) : position;
+      region = mappedFile.map(regionPosition, mapSize);
+    }
+
+    final ByteBuffer window = region.duplicate();
+    final int offset = (int) (position - regionPosition);
+    // cast to Buffer to run on Java 8
+    ((Buffer) window).limit(offset + size);
+    ((Buffer) window).position(offset);
+    return window.slice();
+  }
+
+  private void unmapRegion() {
+    if (region != null) {
+      mappedFile.unmap(region);
+      region = null;
+    }
+  }
+
+  @Override
+  public void close() {
+    unmapRegion();
+  }
+}
@@ -0,0 +1,61 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SearchEngine that looks for the first byte and then verifies the rest<br>
+ * <br>
+ * Suitable for very short sequences of bytes where skip tables do not pay.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class ScanSearchEngine implements SearchEngine {
+
+  @Override
+  public Matcher compile(final byte[] searchBytes) {
+
+    final byte[] pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+
+    return new Matcher() {
+
+      @Override
+      public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+        return MappedBufferScanner.indexOf(buf, fromIndex, toIndex, pattern);
+      }
+
+      @Override
+      public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+        return MappedBufferScanner.lastIndexOf(buf, fromIndex, toIndex, pattern);
+      }
+
+      @Override
+      public int length() {
+        return pattern.length;
+      }
+    };
+  }
+}
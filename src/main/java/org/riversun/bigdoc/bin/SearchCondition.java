@@ -8,10 +8,15 @@ import org.riversun.bigdoc.bin.BigFileSearcher.OnRealtimeResultListener;
 public class SearchCondition {
   public File srcFile;
   public byte[] searchBytes;
+  public BytePattern searchPattern;// used instead of searchBytes if specified
+  public boolean ignoreCase;// ignores the case of ASCII letters
   public int numOfThreads;
   public boolean useOptimization;
   public long startPosition;
-  public long endPosition = -1;// not applicable now
+  public long endPosition = -1;// end of the range to search(exclusive),-1 means the end of the file
   public OnRealtimeResultListener onRealtimeResultListener;
   public OnProgressListener onProgressListener;
+  public SearchEngine searchEngine;// null means the engine of the searcher
+  public long maxNumOfPointers = -1;// stops after finding this number of positions,-1 means no limit
+  public IoBackend ioBackend;// null means the backend of the searcher
 }
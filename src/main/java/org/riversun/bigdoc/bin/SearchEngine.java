@@ -0,0 +1,94 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Strategy to find a sequence of bytes in a ByteBuffer<br>
+ * <br>
+ * A SearchEngine compiles the bytes to find into a {@link Matcher} once per
+ * search. Implementations must be stateless and Matchers must be immutable so
+ * that they can be shared by the workers of a search.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public interface SearchEngine {
+
+  public static interface Matcher {
+
+    /**
+     * Returns the index within the buffer of the first occurrence of the
+     * compiled bytes that starts at or after fromIndex and ends at or before
+     * toIndex.<br>
+     * The position and the limit of the buffer are not changed.
+     * 
+     * @param buf
+     *                  buffer to be scanned
+     * @param fromIndex
+     *                  index to start scanning(inclusive)
+     * @param toIndex
+     *                  index to end scanning(exclusive)
+     * @return index of the first occurrence. '-1' means that it was not
+     *         found.
+     */
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex);
+
+    /**
+     * Returns the index within the buffer of the last occurrence of the
+     * compiled bytes that starts at or after fromIndex and ends at or before
+     * toIndex.<br>
+     * The position and the limit of the buffer are not changed.
+     * 
+     * @param buf
+     *                  buffer to be scanned
+     * @param fromIndex
+     *                  index to stop scanning(inclusive)
+     * @param toIndex
+     *                  index to start scanning backward(exclusive)
+     * @return index of the last occurrence. '-1' means that it was not
+     *         found.
+     */
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex);
+
+    /**
+     * Returns the length of the compiled bytes
+     * 
+     * @return
+     */
+    public int length();
+  }
+
+  /**
+   * Compile a sequence of bytes you want to find
+   * 
+   * @param searchBytes
+   *                    a sequence of bytes you want to find
+   * @return
+   * @throws IllegalArgumentException
+   *                                    if the sequence is null or empty
+   */
+  public Matcher compile(byte[] searchBytes);
+}
@@ -0,0 +1,63 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Entry point to the mapping by MemorySegment<br>
+ * <br>
+ * This is the Java 8 version which has no MemorySegment. On newer JDKs this
+ * class is replaced by the version in META-INF/versions of the multi-release
+ * jar.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class SegmentSupport {
+
+  private SegmentSupport() {
+  }
+
+  /**
+   * Returns whether the mapping by MemorySegment is available on this runtime
+   * 
+   * @return
+   */
+  static boolean isAvailable() {
+    return false;
+  }
+
+  /**
+   * Map the range [startPosition,endPosition) of the file as one
+   * MemorySegment,or returns null if it is not available on this runtime
+   * 
+   * @return
+   * @throws IOException
+   */
+  static WindowMapper newWindowMapper(FileChannel channel, long startPosition, long endPosition) throws IOException {
+    return null;
+  }
+}
@@ -0,0 +1,167 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SearchEngine that reads the buffer 8 bytes at a time as a long and finds
+ * the candidates where both the first and the last byte of the sequence
+ * match using SWAR(SIMD within a register) bit operations<br>
+ * <br>
+ * Only the candidates are verified byte by byte, so the scan runs close to
+ * the memory bandwidth unless the first and the last byte are very common.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class SwarSearchEngine implements SearchEngine {
+
+  private static final long LOW_7_BITS = 0x7f7f7f7f7f7f7f7fL;
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return new SwarMatcher(searchBytes);
+  }
+
+  private static final class SwarMatcher implements Matcher {
+
+    private final byte[] pattern;
+    private final long firstBytePattern;
+    private final long lastBytePattern;
+
+    SwarMatcher(byte[] searchBytes) {
+      this.pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+      this.firstBytePattern = broadcast(pattern[0]);
+      this.lastBytePattern = broadcast(pattern[pattern.length - 1]);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final boolean bigEndian = (buf.order() == ByteOrder.BIG_ENDIAN);
+
+      int i = fromIndex;
+
+      // while the word for the last byte is fully inside [fromIndex,toIndex)
+      while (i + lastIndexOfPattern + Long.BYTES <= toIndex) {
+
+        final long firstByteMatches = zeroBytes(buf.getLong(i) ^ firstBytePattern);
+        final long lastByteMatches = zeroBytes(buf.getLong(i + lastIndexOfPattern) ^ lastBytePattern);
+
+        long candidates = firstByteMatches & lastByteMatches;
+
+        while (candidates != 0) {
+
+          final int byteIndex;
+          if (bigEndian) {
+            byteIndex = Long.numberOfLeadingZeros(candidates) >>> 3;
+            candidates &= ~(0x8000000000000000L >>> (byteIndex << 3));
+          } else {
+            byteIndex = Long.numberOfTrailingZeros(candidates) >>> 3;
+            candidates &= candidates - 1;
+          }
+
+          if (matchesMiddle(buf, i + byteIndex)) {
+            return i + byteIndex;
+          }
+        }
+        i += Long.BYTES;
+      }
+
+      // scan the rest which is shorter than a word
+      return MappedBufferScanner.indexOf(buf, i, toIndex, pattern);
+    }
+
+    @Override
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final boolean bigEndian = (buf.order() == ByteOrder.BIG_ENDIAN);
+
+      // start of the last word whose candidates are tested
+      int i = toIndex - lastIndexOfPattern - Long.BYTES;
+
+      while (i >= fromIndex) {
+
+        final long firstByteMatches = zeroBytes(buf.getLong(i) ^ firstBytePattern);
+        final long lastByteMatches = zeroBytes(buf.getLong(i + lastIndexOfPattern) ^ lastBytePattern);
+
+        long candidates = firstByteMatches & lastByteMatches;
+
+        // test the candidates from the highest address
+        while (candidates != 0) {
+
+          final int byteIndex;
+          if (bigEndian) {
+            byteIndex = 7 - (Long.numberOfTrailingZeros(candidates) >>> 3);
+            candidates &= candidates - 1;
+          } else {
+            byteIndex = (63 - Long.numberOfLeadingZeros(candidates)) >>> 3;
+            candidates &= ~(0x80L << (byteIndex << 3));
+          }
+
+          if (matchesMiddle(buf, i + byteIndex)) {
+            return i + byteIndex;
+          }
+        }
+        i -= Long.BYTES;
+      }
+
+      // scan the rest which is shorter than a word
+      return MappedBufferScanner.lastIndexOf(buf, fromIndex, i + Long.BYTES + lastIndexOfPattern, pattern);
+    }
+
+    @Override
+    public int length() {
+      return pattern.length;
+    }
+
+    private boolean matchesMiddle(ByteBuffer buf, int index) {
+      for (int j = 1; j < pattern.length - 1; j++) {
+        if (buf.get(index + j) != pattern[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  static long broadcast(byte b) {
+    return (b & 0xffL) * 0x0101010101010101L;
+  }
+
+  /**
+   * Returns the word whose byte has the highest bit(0x80) set only where the
+   * byte of the specified word is zero.<br>
+   * Unlike the well-known "(x - 0x01..) &amp; ~x &amp; 0x80.." expression,
+   * this is exact for every byte, so it can be used to locate positions.
+   */
+  static long zeroBytes(long word) {
+    final long t = (word & LOW_7_BITS) + LOW_7_BITS;
+    return ~(t | word | LOW_7_BITS);
+  }
+}
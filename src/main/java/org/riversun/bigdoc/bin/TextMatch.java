@@ -0,0 +1,82 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+/**
+ * Occurrence of text in a file of a charset<br>
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public final class TextMatch {
+
+  private final long byteOffset;
+  private final long charOffset;
+
+  public TextMatch(long byteOffset, long charOffset) {
+    this.byteOffset = byteOffset;
+    this.charOffset = charOffset;
+  }
+
+  /**
+   * Returns the position of the first byte of the text in the file
+   * 
+   * @return
+   */
+  public long getByteOffset() {
+    return byteOffset;
+  }
+
+  /**
+   * Returns the index of the text in the chars(UTF-16 code units) of the file
+   * decoded as Java does.The byte order mark of UTF-16 is not counted.
+   * 
+   * @return
+   */
+  public long getCharOffset() {
+    return charOffset;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TextMatch)) {
+      return false;
+    }
+    final TextMatch other = (TextMatch) obj;
+    return byteOffset == other.byteOffset && charOffset == other.charOffset;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(byteOffset) * 31 + Long.hashCode(charOffset);
+  }
+
+  @Override
+  public String toString() {
+    return "byte:" + byteOffset + ",char:" + charOffset;
+  }
+}
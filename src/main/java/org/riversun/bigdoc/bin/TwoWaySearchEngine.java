@@ -0,0 +1,243 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SearchEngine based on Crochemore-Perrin Two-Way algorithm<br>
+ * <br>
+ * Runs in linear time in the worst case and uses constant extra space, so
+ * it is suitable for long or highly repetitive sequences of bytes.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class TwoWaySearchEngine implements SearchEngine {
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return new TwoWayMatcher(searchBytes);
+  }
+
+  private static final class TwoWayMatcher implements Matcher {
+
+    private final byte[] pattern;
+
+    // factorization of the pattern to scan forward
+    private final Factorization forward;
+
+    // factorization of the reversed pattern to scan backward
+    private final Factorization backward;
+
+    TwoWayMatcher(byte[] searchBytes) {
+      this.pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+
+      final byte[] reversedPattern = new byte[pattern.length];
+      for (int i = 0; i < pattern.length; i++) {
+        reversedPattern[i] = pattern[pattern.length - 1 - i];
+      }
+
+      this.forward = new Factorization(pattern);
+      this.backward = new Factorization(reversedPattern);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+      final int j = search(buf, fromIndex, toIndex - fromIndex, forward, false);
+      return (j < 0) ? -1 : fromIndex + j;
+    }
+
+    @Override
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+      // the first occurrence of the reversed pattern in the reversed text
+      final int j = search(buf, toIndex - 1, toIndex - fromIndex, backward, true);
+      return (j < 0) ? -1 : toIndex - j - pattern.length;
+    }
+
+    @Override
+    public int length() {
+      return pattern.length;
+    }
+
+    /**
+     * Search the pattern of the factorization in the text which starts at
+     * base and goes forward or backward in the buffer
+     * 
+     * @return index within the text of the first occurrence
+     */
+    private static int search(ByteBuffer buf, int base, int textLength, Factorization f, boolean reversedText) {
+
+      final byte[] pattern = f.pattern;
+      final int criticalPos = f.criticalPos;
+      final int period = f.period;
+
+      final int m = pattern.length;
+      final int lastIndex = textLength - m;
+
+      int j = 0;
+
+      if (f.periodic) {
+
+        int memory = -1;
+
+        while (j <= lastIndex) {
+          int i = Math.max(criticalPos, memory) + 1;
+          while (i < m && pattern[i] == textAt(buf, base, i + j, reversedText)) {
+            i++;
+          }
+          if (i >= m) {
+            i = criticalPos;
+            while (i > memory && pattern[i] == textAt(buf, base, i + j, reversedText)) {
+              i--;
+            }
+            if (i <= memory) {
+              return j;
+            }
+            j += period;
+            memory = m - period - 1;
+          } else {
+            j += i - criticalPos;
+            memory = -1;
+          }
+        }
+      } else {
+
+        while (j <= lastIndex) {
+          int i = criticalPos + 1;
+          while (i < m && pattern[i] == textAt(buf, base, i + j, reversedText)) {
+            i++;
+          }
+          if (i >= m) {
+            i = criticalPos;
+            while (i >= 0 && pattern[i] == textAt(buf, base, i + j, reversedText)) {
+              i--;
+            }
+            if (i < 0) {
+              return j;
+            }
+            j += period;
+          } else {
+            j += i - criticalPos;
+          }
+        }
+      }
+      return -1;
+    }
+
+    private static byte textAt(ByteBuffer buf, int base, int index, boolean reversedText) {
+      return reversedText ? buf.get(base - index) : buf.get(base + index);
+    }
+  }
+
+  /**
+   * Critical factorization of a pattern
+   */
+  private static final class Factorization {
+
+    final byte[] pattern;
+
+    // index of the last byte of the left half of the critical factorization
+    final int criticalPos;
+
+    final int period;
+
+    final boolean periodic;
+
+    Factorization(byte[] pattern) {
+      this.pattern = pattern;
+
+      final int[] suffix = maxSuffix(pattern, false);
+      final int[] suffixTilde = maxSuffix(pattern, true);
+
+      final int ell;
+      final int per;
+
+      if (suffix[0] > suffixTilde[0]) {
+        ell = suffix[0];
+        per = suffix[1];
+      } else {
+        ell = suffixTilde[0];
+        per = suffixTilde[1];
+      }
+
+      this.criticalPos = ell;
+
+      if (ell + 1 + per <= pattern.length && regionEquals(pattern, 0, per, ell + 1)) {
+        this.periodic = true;
+        this.period = per;
+      } else {
+        this.periodic = false;
+        this.period = Math.max(ell + 1, pattern.length - ell - 1) + 1;
+      }
+    }
+
+    /**
+     * Compute the maximal suffix of the pattern for the byte order(or the
+     * reversed byte order)
+     * 
+     * @return {start position - 1 of the maximal suffix, its period}
+     */
+    private static int[] maxSuffix(byte[] x, boolean reversedOrder) {
+
+      int ms = -1;
+      int j = 0;
+      int k = 1;
+      int p = 1;
+
+      while (j + k < x.length) {
+        final int a = x[j + k] & 0xff;
+        final int b = x[ms + k] & 0xff;
+
+        if (reversedOrder ? a > b : a < b) {
+          j += k;
+          k = 1;
+          p = j - ms;
+        } else if (a == b) {
+          if (k != p) {
+            k++;
+          } else {
+            j += p;
+            k = 1;
+          }
+        } else {
+          ms = j;
+          j = ms + 1;
+          k = 1;
+          p = 1;
+        }
+      }
+      return new int[] { ms, p };
+    }
+
+    private static boolean regionEquals(byte[] x, int offset1, int offset2, int length) {
+      for (int i = 0; i < length; i++) {
+        if (x[offset1 + i] != x[offset2 + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entry point to the SIMD(Vector API) search engine<br>
+ * <br>
+ * This is the version for JDK 17 and later in the multi-release jar. The
+ * Vector API is still an incubator module, so the engine is available only
+ * when the JVM is started with "--add-modules jdk.incubator.vector".
+ * Otherwise the Java 8 engines are used.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class SimdSupport {
+
+  private SimdSupport() {
+  }
+
+  /**
+   * Returns the SIMD search engine or null if it is not available on this
+   * runtime
+   * 
+   * @return
+   */
+  static SearchEngine newSearchEngine() {
+
+    if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+      return null;
+    }
+
+    try {
+      final SearchEngine engine = new VectorSearchEngine();
+
+      // probe once,in case the API of the incubator module has changed
+      final ByteBuffer probe = ByteBuffer.allocateDirect(256);
+      probe.put(200, (byte) 1);
+      if (engine.compile(new byte[] { 1 }).indexOf(probe, 0, probe.capacity()) != 200) {
+        return null;
+      }
+      return engine;
+    } catch (LinkageError e) {
+      return null;
+    }
+  }
+}
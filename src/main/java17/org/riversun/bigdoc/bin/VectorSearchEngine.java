@@ -0,0 +1,152 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SearchEngine that finds the candidates where both the first and the last
+ * byte of the sequence match using Vector API<br>
+ * <br>
+ * Tests as many positions as the lanes of the preferred species(32 on AVX2,64
+ * on AVX-512) per compare and verifies only the candidates byte by byte.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class VectorSearchEngine implements SearchEngine {
+
+  /**
+   * Max number of bits of the vector.The candidates of a vector are extracted
+   * into a long,so the vector must not have more than 64 lanes.
+   */
+  private static final int MAX_VECTOR_BIT_SIZE = 512;
+
+  // SVE may prefer vectors up to 2048 bits
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.vectorBitSize() > MAX_VECTOR_BIT_SIZE ? ByteVector.SPECIES_512 : ByteVector.SPECIES_PREFERRED;
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return new VectorMatcher(searchBytes);
+  }
+
+  private static final class VectorMatcher implements Matcher {
+
+    private final byte[] pattern;
+    private final ByteVector firstBytePattern;
+    private final ByteVector lastBytePattern;
+
+    VectorMatcher(byte[] searchBytes) {
+      this.pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+      this.firstBytePattern = ByteVector.broadcast(SPECIES, pattern[0]);
+      this.lastBytePattern = ByteVector.broadcast(SPECIES, pattern[pattern.length - 1]);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final int lanes = SPECIES.length();
+
+      int i = fromIndex;
+
+      // while the vector for the last byte is fully inside [fromIndex,toIndex)
+      while (i + lastIndexOfPattern + lanes <= toIndex) {
+
+        final ByteVector firstBytes = ByteVector.fromByteBuffer(SPECIES, buf, i, ByteOrder.nativeOrder());
+        final ByteVector lastBytes = ByteVector.fromByteBuffer(SPECIES, buf, i + lastIndexOfPattern, ByteOrder.nativeOrder());
+
+        final VectorMask<Byte> mask = firstBytes.eq(firstBytePattern).and(lastBytes.eq(lastBytePattern));
+
+        // most of the vectors have no candidate,so test it before extracting
+        // the bits
+        long candidates = mask.anyTrue() ? mask.toLong() : 0;
+
+        while (candidates != 0) {
+          final int laneIndex = Long.numberOfTrailingZeros(candidates);
+          if (matchesMiddle(buf, i + laneIndex)) {
+            return i + laneIndex;
+          }
+          candidates &= candidates - 1;
+        }
+        i += lanes;
+      }
+
+      // scan the rest which is shorter than a vector
+      return MappedBufferScanner.indexOf(buf, i, toIndex, pattern);
+    }
+
+    @Override
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final int lanes = SPECIES.length();
+
+      // start of the last vector whose candidates are tested
+      int i = toIndex - lastIndexOfPattern - lanes;
+
+      while (i >= fromIndex) {
+
+        final ByteVector firstBytes = ByteVector.fromByteBuffer(SPECIES, buf, i, ByteOrder.nativeOrder());
+        final ByteVector lastBytes = ByteVector.fromByteBuffer(SPECIES, buf, i + lastIndexOfPattern, ByteOrder.nativeOrder());
+
+        final VectorMask<Byte> mask = firstBytes.eq(firstBytePattern).and(lastBytes.eq(lastBytePattern));
+
+        long candidates = mask.anyTrue() ? mask.toLong() : 0;
+
+        // test the candidates from the highest lane
+        while (candidates != 0) {
+          final int laneIndex = 63 - Long.numberOfLeadingZeros(candidates);
+          if (matchesMiddle(buf, i + laneIndex)) {
+            return i + laneIndex;
+          }
+          candidates &= ~(1L << laneIndex);
+        }
+        i -= lanes;
+      }
+
+      // scan the rest which is shorter than a vector
+      return MappedBufferScanner.lastIndexOf(buf, fromIndex, i + lanes + lastIndexOfPattern, pattern);
+    }
+
+    @Override
+    public int length() {
+      return pattern.length;
+    }
+
+    private boolean matchesMiddle(ByteBuffer buf, int index) {
+      for (int j = 1; j < pattern.length - 1; j++) {
+        if (buf.get(index + j) != pattern[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
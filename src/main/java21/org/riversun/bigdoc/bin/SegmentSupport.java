@@ -0,0 +1,183 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Entry point to the mapping by MemorySegment<br>
+ * <br>
+ * This is the version for JDK 21 and later in the multi-release jar.
+ * MemorySegment and Arena are a preview API on JDK 21,so they are linked at
+ * runtime instead of at compile time.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class SegmentSupport {
+
+  // ()Arena
+  private static final MethodHandle OF_CONFINED;
+
+  // (FileChannel,MapMode,long,long,Arena)MemorySegment
+  private static final MethodHandle MAP;
+
+  // (MemorySegment,long,long)MemorySegment
+  private static final MethodHandle AS_SLICE;
+
+  // (MemorySegment)ByteBuffer
+  private static final MethodHandle AS_BYTE_BUFFER;
+
+  // (Arena)void
+  private static final MethodHandle CLOSE;
+
+  static {
+
+    MethodHandle ofConfined = null;
+    MethodHandle map = null;
+    MethodHandle asSlice = null;
+    MethodHandle asByteBuffer = null;
+    MethodHandle close = null;
+
+    try {
+      final Class<?> arenaClass = Class.forName("java.lang.foreign.Arena");
+      final Class<?> memorySegmentClass = Class.forName("java.lang.foreign.MemorySegment");
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+      ofConfined = lookup.findStatic(arenaClass, "ofConfined", MethodType.methodType(arenaClass))
+          .asType(MethodType.methodType(Object.class));
+
+      map = lookup.findVirtual(FileChannel.class, "map", MethodType.methodType(memorySegmentClass, FileChannel.MapMode.class, long.class, long.class, arenaClass))
+          .asType(MethodType.methodType(Object.class, FileChannel.class, FileChannel.MapMode.class, long.class, long.class, Object.class));
+
+      asSlice = lookup.findVirtual(memorySegmentClass, "asSlice", MethodType.methodType(memorySegmentClass, long.class, long.class))
+          .asType(MethodType.methodType(Object.class, Object.class, long.class, long.class));
+
+      asByteBuffer = lookup.findVirtual(memorySegmentClass, "asByteBuffer", MethodType.methodType(ByteBuffer.class))
+          .asType(MethodType.methodType(ByteBuffer.class, Object.class));
+
+      close = lookup.findVirtual(arenaClass, "close", MethodType.methodType(void.class))
+          .asType(MethodType.methodType(void.class, Object.class));
+
+    } catch (ReflectiveOperationException e) {
+      // the regions of MappedByteBuffer are used instead
+      ofConfined = null;
+    }
+
+    OF_CONFINED = ofConfined;
+    MAP = map;
+    AS_SLICE = asSlice;
+    AS_BYTE_BUFFER = asByteBuffer;
+    CLOSE = close;
+  }
+
+  private SegmentSupport() {
+  }
+
+  /**
+   * Returns whether the mapping by MemorySegment is available on this runtime
+   * 
+   * @return
+   */
+  static boolean isAvailable() {
+    return OF_CONFINED != null;
+  }
+
+  /**
+   * Map the range [startPosition,endPosition) of the file as one
+   * MemorySegment,or returns null if it is not available on this runtime
+   * 
+   * @return
+   * @throws IOException
+   */
+  static WindowMapper newWindowMapper(FileChannel channel, long startPosition, long endPosition) throws IOException {
+    if (!isAvailable()) {
+      return null;
+    }
+    return new SegmentWindowMapper(channel, startPosition, endPosition);
+  }
+
+  /**
+   * Maps the whole range as one segment regardless of the 2GB limit of a
+   * MappedByteBuffer.The windows are views of the segment and the segment is
+   * unmapped by closing its arena,so it can only be used by the thread that
+   * created it.
+   */
+  private static final class SegmentWindowMapper implements WindowMapper {
+
+    private final Object arena;
+
+    private final long startPosition;
+
+    private final Object segment;
+
+    SegmentWindowMapper(FileChannel channel, long startPosition, long endPosition) throws IOException {
+      try {
+        this.arena = (Object) OF_CONFINED.invokeExact();
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+      this.startPosition = startPosition;
+      try {
+        this.segment = (Object) MAP.invokeExact(channel, FileChannel.MapMode.READ_ONLY, startPosition, Math.max(0, endPosition - startPosition), arena);
+      } catch (IOException | RuntimeException | Error e) {
+        close();
+        throw e;
+      } catch (Throwable e) {
+        close();
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public ByteBuffer map(long position, int size) {
+      try {
+        final Object slice = (Object) AS_SLICE.invokeExact(segment, position - startPosition, (long) size);
+        return (ByteBuffer) AS_BYTE_BUFFER.invokeExact(slice);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void close() {
+      try {
+        CLOSE.invokeExact(arena);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc.bin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SearchEngine that finds the candidates where both the first and the last
+ * byte of the sequence match using Vector API<br>
+ * <br>
+ * Tests as many positions as the lanes of the preferred species(32 on AVX2,64
+ * on AVX-512) per compare and verifies only the candidates byte by byte.<br>
+ * <br>
+ * This is the version for JDK 21 and later in the multi-release jar.
+ * ByteVector#fromByteBuffer was removed in JDK 19,so the vectors are loaded
+ * from a MemorySegment view of the buffer.MemorySegment is a preview API on
+ * JDK 21,so it is linked at runtime instead of at compile time.
+ * 
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+final class VectorSearchEngine implements SearchEngine {
+
+  /**
+   * Max number of bits of the vector.The candidates of a vector are extracted
+   * into a long,so the vector must not have more than 64 lanes.
+   */
+  private static final int MAX_VECTOR_BIT_SIZE = 512;
+
+  // SVE may prefer vectors up to 2048 bits
+  private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED.vectorBitSize() > MAX_VECTOR_BIT_SIZE ? ByteVector.SPECIES_512 : ByteVector.SPECIES_PREFERRED;
+
+  private static final ByteOrder NATIVE_ORDER = ByteOrder.nativeOrder();
+
+  // (ByteBuffer)MemorySegment
+  private static final MethodHandle OF_BUFFER;
+
+  // (VectorSpecies,MemorySegment,long,ByteOrder)ByteVector
+  private static final MethodHandle FROM_MEMORY_SEGMENT;
+
+  // segment of the window last searched by each worker
+  private static final ThreadLocal<SegmentCache> SEGMENT_CACHE = new ThreadLocal<SegmentCache>() {
+    @Override
+    protected SegmentCache initialValue() {
+      return new SegmentCache();
+    }
+  };
+
+  static {
+    try {
+      final Class<?> memorySegmentClass = Class.forName("java.lang.foreign.MemorySegment");
+      final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+      OF_BUFFER = lookup.findStatic(memorySegmentClass, "ofBuffer", MethodType.methodType(memorySegmentClass, Buffer.class))
+          .asType(MethodType.methodType(Object.class, ByteBuffer.class));
+
+      FROM_MEMORY_SEGMENT = lookup.findStatic(ByteVector.class, "fromMemorySegment", MethodType.methodType(ByteVector.class, VectorSpecies.class, memorySegmentClass, long.class, ByteOrder.class))
+          .asType(MethodType.methodType(ByteVector.class, VectorSpecies.class, Object.class, long.class, ByteOrder.class));
+
+    } catch (ReflectiveOperationException e) {
+      // SimdSupport falls back to the Java 8 engines
+      throw new NoSuchMethodError(e.toString());
+    }
+  }
+
+  private static final class SegmentCache {
+    private ByteBuffer buffer;
+    private int limit;
+    private Object segment;
+  }
+
+  @Override
+  public Matcher compile(byte[] searchBytes) {
+    return new VectorMatcher(searchBytes);
+  }
+
+  private static final class VectorMatcher implements Matcher {
+
+    private final byte[] pattern;
+    private final ByteVector firstBytePattern;
+    private final ByteVector lastBytePattern;
+
+    VectorMatcher(byte[] searchBytes) {
+      this.pattern = BytePattern.checkSearchBytes(searchBytes).clone();
+      this.firstBytePattern = ByteVector.broadcast(SPECIES, pattern[0]);
+      this.lastBytePattern = ByteVector.broadcast(SPECIES, pattern[pattern.length - 1]);
+    }
+
+    @Override
+    public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final Object segment = ofBuffer(buf);
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final int lanes = SPECIES.length();
+
+      int i = fromIndex;
+
+      // while the vector for the last byte is fully inside [fromIndex,toIndex)
+      while (i + lastIndexOfPattern + lanes <= toIndex) {
+
+        final ByteVector firstBytes = load(segment, i);
+        final ByteVector lastBytes = load(segment, i + lastIndexOfPattern);
+
+        final VectorMask<Byte> mask = firstBytes.eq(firstBytePattern).and(lastBytes.eq(lastBytePattern));
+
+        // most of the vectors have no candidate,so test it before extracting
+        // the bits
+        long candidates = mask.anyTrue() ? mask.toLong() : 0;
+
+        while (candidates != 0) {
+          final int laneIndex = Long.numberOfTrailingZeros(candidates);
+          if (matchesMiddle(buf, i + laneIndex)) {
+            return i + laneIndex;
+          }
+          candidates &= candidates - 1;
+        }
+        i += lanes;
+      }
+
+      // scan the rest which is shorter than a vector
+      return MappedBufferScanner.indexOf(buf, i, toIndex, pattern);
+    }
+
+    @Override
+    public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+
+      final Object segment = ofBuffer(buf);
+
+      final int lastIndexOfPattern = pattern.length - 1;
+      final int lanes = SPECIES.length();
+
+      // start of the last vector whose candidates are tested
+      int i = toIndex - lastIndexOfPattern - lanes;
+
+      while (i >= fromIndex) {
+
+        final ByteVector firstBytes = load(segment, i);
+        final ByteVector lastBytes = load(segment, i + lastIndexOfPattern);
+
+        final VectorMask<Byte> mask = firstBytes.eq(firstBytePattern).and(lastBytes.eq(lastBytePattern));
+
+        long candidates = mask.anyTrue() ? mask.toLong() : 0;
+
+        // test the candidates from the highest lane
+        while (candidates != 0) {
+          final int laneIndex = 63 - Long.numberOfLeadingZeros(candidates);
+          if (matchesMiddle(buf, i + laneIndex)) {
+            return i + laneIndex;
+          }
+          candidates &= ~(1L << laneIndex);
+        }
+        i -= lanes;
+      }
+
+      // scan the rest which is shorter than a vector
+      return MappedBufferScanner.lastIndexOf(buf, fromIndex, i + lanes + lastIndexOfPattern, pattern);
+    }
+
+    @Override
+    public int length() {
+      return pattern.length;
+    }
+
+    /**
+     * Returns the segment of the buffer from index 0 to its limit<br>
+     * <br>
+     * A window is scanned by many calls,so the segment is created once per
+     * window and worker.
+     */
+    private static Object ofBuffer(ByteBuffer buf) {
+
+      final SegmentCache cache = SEGMENT_CACHE.get();
+
+      if (cache.buffer == buf && cache.limit == buf.limit()) {
+        return cache.segment;
+      }
+
+      final ByteBuffer whole = buf.duplicate();
+      whole.position(0);
+      try {
+        cache.segment = (Object) OF_BUFFER.invokeExact(whole);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+      cache.buffer = buf;
+      cache.limit = buf.limit();
+
+      return cache.segment;
+    }
+
+    private static ByteVector load(Object segment, long offset) {
+      try {
+        return (ByteVector) FROM_MEMORY_SEGMENT.invokeExact((VectorSpecies) SPECIES, segment, offset, NATIVE_ORDER);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private boolean matchesMiddle(ByteBuffer buf, int index) {
+      for (int j = 1; j < pattern.length - 1; j++) {
+        if (buf.get(index + j) != pattern[j]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
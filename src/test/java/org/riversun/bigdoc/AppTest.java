@@ -33,7 +33,7 @@ import org.junit.runners.Suite.SuiteClasses;
  * Tom Misawa (riversun.org@gmail.com)
  */
 @RunWith(Suite.class)
-@SuiteClasses({ TestBinFileSearcher.class, TestBigFileSearcher.class })
+@SuiteClasses({ TestBinFileSearcher.class, TestBigFileSearcher.class, TestSearchEngine.class })
 public class AppTest {
 
 }
@@ -0,0 +1,188 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.riversun.bigdoc.bin.AutoSearchEngine;
+import org.riversun.bigdoc.bin.BigFileSearcher;
+import org.riversun.bigdoc.bin.BinFileSearcher;
+import org.riversun.bigdoc.bin.IoBackend;
+import org.riversun.bigdoc.bin.ScanSearchEngine;
+import org.riversun.bigdoc.bin.SearchEngine;
+
+/**
+ * test for the classes in META-INF/versions of the multi-release jar<br>
+ * <br>
+ * Run by "mvn verify" against the packaged jar,the versioned classes are not
+ * used from target/classes.
+ *
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class MultiReleaseJarIT extends TestBase {
+
+	private static int javaVersion() {
+		final String version = System.getProperty("java.specification.version");
+		if (version.startsWith("1.")) {
+			return Integer.parseInt(version.substring(2));
+		}
+		return Integer.parseInt(version);
+	}
+
+	@Test
+	public void test_classes_are_loaded_from_jar() {
+		final String location = BigFileSearcher.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+		assertTrue(location, location.endsWith(".jar"));
+	}
+
+	/**
+	 * The Vector API engine is selected for short sequences on JDK 17 and
+	 * later,the build adds jdk.incubator.vector to the JVM of this test
+	 */
+	@Test
+	public void test_selected_engine() {
+
+		final SearchEngine engine = new AutoSearchEngine().select(4);
+
+		System.out.println("java " + javaVersion() + " selected engine=" + engine.getClass().getSimpleName());
+
+		if (javaVersion() >= 17) {
+			assertEquals("VectorSearchEngine", engine.getClass().getSimpleName());
+		} else {
+			assertEquals("SwarSearchEngine", engine.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * compare the results of the selected engine with the naive scan on direct
+	 * buffers(like mapped ones) and heap buffers
+	 */
+	@Test
+	public void test_selected_engine_random() {
+
+		final SearchEngine engine = new AutoSearchEngine();
+		final SearchEngine expectedEngine = new ScanSearchEngine();
+
+		final Random rnd = new Random(4321);
+
+		for (int n = 0; n < 2000; n++) {
+
+			final int alphabetSize = 1 + rnd.nextInt(3);
+
+			final byte[] text = new byte[rnd.nextInt(400)];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final byte[] pattern = new byte[1 + rnd.nextInt(12)];
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final ByteBuffer direct = ByteBuffer.allocateDirect(text.length);
+			direct.put(text);
+			direct.clear();
+
+			final int fromIndex = text.length == 0 ? 0 : rnd.nextInt(text.length);
+			final int toIndex = fromIndex + rnd.nextInt(text.length - fromIndex + 1);
+
+			for (ByteBuffer buf : new ByteBuffer[] { direct, ByteBuffer.wrap(text) }) {
+				assertEquals(expectedEngine.compile(pattern).indexOf(buf, fromIndex, toIndex), engine.compile(pattern).indexOf(buf, fromIndex, toIndex));
+				assertEquals(expectedEngine.compile(pattern).lastIndexOf(buf, fromIndex, toIndex), engine.compile(pattern).lastIndexOf(buf, fromIndex, toIndex));
+			}
+		}
+	}
+
+	@Test
+	public void test_search_file_with_selected_engine() {
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		final BinFileSearcher expectedObj = new BinFileSearcher();
+		expectedObj.setSearchEngine(new ScanSearchEngine());
+
+		final BinFileSearcher obj = new BinFileSearcher();
+		obj.setBufferSize(4096);
+
+		for (String text : new String[] { "a", "the", "rejoice", "Coriolanus" }) {
+			assertEquals(expectedObj.search(file, getFromUTF8(text)), obj.search(file, getFromUTF8(text)));
+			assertEquals(expectedObj.searchPointersReverse(file, getFromUTF8(text)).toList(), obj.searchPointersReverse(file, getFromUTF8(text)).toList());
+		}
+	}
+
+	@Test
+	public void test_virtual_threads_available() {
+		assertEquals(javaVersion() >= 21, BigFileSearcher.isVirtualThreadsAvailable());
+	}
+
+	@Test
+	public void test_memory_segment_available() {
+		assertEquals(javaVersion() >= 21, BinFileSearcher.isMemorySegmentAvailable());
+	}
+
+	/**
+	 * compare the results of the whole range mapped as one MemorySegment with
+	 * the regions of MappedByteBuffer
+	 */
+	@Test
+	public void test_search_file_with_memory_segment() {
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		final BinFileSearcher expectedObj = new BinFileSearcher();
+		expectedObj.setBufferSize(4096);
+
+		final BinFileSearcher obj = new BinFileSearcher();
+		obj.setBufferSize(4096);
+		obj.setIoBackend(IoBackend.SEGMENT);
+
+		final BigFileSearcher bigObj = new BigFileSearcher();
+		bigObj.setUseOptimization(false);
+		bigObj.setBlockSize(10000);
+		bigObj.setIoBackend(IoBackend.SEGMENT);
+
+		for (String text : new String[] { "a", "the", "rejoice", "Coriolanus" }) {
+
+			final List<Long> expected = expectedObj.search(file, getFromUTF8(text));
+
+			assertEquals(expected, obj.search(file, getFromUTF8(text)));
+			assertEquals(expectedObj.searchPointersReverse(file, getFromUTF8(text)).toList(), obj.searchPointersReverse(file, getFromUTF8(text)).toList());
+
+			assertEquals(expected, bigObj.searchBigFile(file, getFromUTF8(text)));
+			assertEquals(expected.get(expected.size() - 1), bigObj.lastIndexOf(file, getFromUTF8(text)));
+			assertEquals(expected, bigObj.searchBigFile(file, Arrays.asList(getFromUTF8(text))).get(0));
+		}
+
+		assertEquals(expectedObj.searchRegex(file, "[Cc]oriolanus[,.]"), bigObj.searchRegex(file, "[Cc]oriolanus[,.]"));
+	}
+}
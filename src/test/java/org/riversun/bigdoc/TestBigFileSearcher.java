@@ -24,18 +24,59 @@
 package org.riversun.bigdoc;
 
 import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.rules.TestName;
 import org.riversun.bigdoc.bin.BigFileSearcher;
+import org.riversun.bigdoc.bin.BinFileSearcher;
+import org.riversun.bigdoc.bin.BytePattern;
+import org.riversun.bigdoc.bin.FileMappingCache;
+import org.riversun.bigdoc.bin.IoBackend;
+import org.riversun.bigdoc.bin.PointerIterator;
+import org.riversun.bigdoc.bin.PointerList;
+import org.riversun.bigdoc.bin.RegexMatch;
+import org.riversun.bigdoc.bin.ScanSearchEngine;
 import org.riversun.bigdoc.bin.SearchCondition;
+import org.riversun.bigdoc.bin.SearchEngine;
+import org.riversun.bigdoc.bin.TextMatch;
 import org.riversun.bigdoc.bin.BigFileSearcher.OnProgressListener;
 import org.riversun.bigdoc.bin.BigFileSearcher.OnRealtimeResultListener;
 
@@ -49,6 +90,9 @@ public class TestBigFileSearcher extends TestBase {
 	@Rule
 	public TestName name = new TestName();
 
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
 	@Before
 	public void setUp() throws Exception {
 	}
@@ -165,6 +209,961 @@ public class TestBigFileSearcher extends TestBase {
 		System.out.println();
 	}
 	
+	@Test
+	public void test_searchBigFileRealtime_multiple_blocks() {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<Long> expected = Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L);
+
+		final BigFileSearcher obj = new BigFileSearcher();
+		obj.setBlockSize(256 * 1024);
+
+		// the blocks which have not reported yet are skipped in the results
+		final List<List<Long>> callbacks = new ArrayList<List<Long>>();
+
+		final OnRealtimeResultListener listener = new OnRealtimeResultListener() {
+
+			@Override
+			public void onRealtimeResultListener(float progress, List<Long> pointerList) {
+				callbacks.add(new ArrayList<Long>(pointerList));
+			}
+		};
+
+		assertEquals(expected, obj.searchBigFileRealtime(srcFile, searchBytes, listener));
+		assertTrue(callbacks.size() > 1);
+		assertEquals(expected, callbacks.get(callbacks.size() - 1));
+
+		callbacks.clear();
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchBytes = searchBytes;
+		sc.numOfThreads = 4;
+		sc.onRealtimeResultListener = listener;
+
+		final BigFileSearcher chunked = new BigFileSearcher();
+		chunked.setUseOptimization(false);
+		chunked.setBlockSize(10000);
+
+		assertEquals(expected, chunked.searchBigFile(sc));
+		assertTrue(callbacks.size() > 1);
+	}
+
+	/**
+	 * check whether every position is found exactly once even if a lot of
+	 * occurrences straddle between the blocks
+	 */
+	@Test
+	public void test_search_dense_occurrences_across_blocks() throws IOException {
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i % 7 == 0) ? 'b' : 'a');
+		}
+
+		final File srcFile = tempFolder.newFile("dense.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final byte[] searchBytes = getFromUTF8("aaa");
+
+		final List<Long> expected = new BinFileSearcher().search(srcFile, searchBytes);
+
+		for (int blockSize : new int[] { 7, 100, 999, 1000, 1001 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(blockSize);
+			obj.setMaxNumOfThreads(4);
+			obj.setBufferSizePerWorker(64);
+			assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = searchBytes;
+			final LongStream stream = obj.searchBigFileStream(sc);
+			assertEquals(expected, stream.boxed().collect(Collectors.toList()));
+			stream.close();
+		}
+	}
+
+	@Test
+	public void test_shared_executor() throws Exception {
+
+		final String searchText = "hello world.";
+
+		final byte[] searchBytes = getFromUTF8(searchText);
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<Long> expected = Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L);
+
+		final ExecutorService[] executors = { BigFileSearcher.newSharedExecutorService(2), new ForkJoinPool(3) };
+
+		for (ExecutorService executorService : executors) {
+
+			// searchers on other threads share the executor
+			final List<Future<List<Long>>> results = new ArrayList<Future<List<Long>>>();
+			final ExecutorService callers = Executors.newFixedThreadPool(4);
+
+			for (int i = 0; i < 8; i++) {
+				results.add(callers.submit(new Callable<List<Long>>() {
+
+					@Override
+					public List<Long> call() throws Exception {
+						final BigFileSearcher obj = new BigFileSearcher();
+						obj.setUseOptimization(false);
+						obj.setBlockSize(256 * 1024);
+						obj.setExecutorService(executorService);
+						return obj.searchBigFile(srcFile, searchBytes);
+					}
+				}));
+			}
+			callers.shutdown();
+
+			for (Future<List<Long>> result : results) {
+				assertEquals(expected, result.get());
+			}
+
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(256 * 1024);
+			obj.setExecutorService(executorService);
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = searchBytes;
+
+			assertEquals(expected, obj.searchBigFileStream(sc).boxed().collect(Collectors.toList()));
+			assertEquals(Long.valueOf(5242863L), obj.lastIndexOf(srcFile, searchBytes));
+
+			// not shut down by the searches
+			assertFalse(executorService.isShutdown());
+			executorService.shutdown();
+		}
+	}
+
+	@Test
+	public void test_search_in_chunks() throws IOException {
+
+		final Random rnd = new Random(97531);
+
+		final byte[] data = new byte[24000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + rnd.nextInt(3));
+		}
+
+		final File srcFile = tempFolder.newFile("chunks.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final List<Long> expected = new BinFileSearcher().search(srcFile, getFromUTF8("abca"));
+
+		// more chunks than threads.The blocks of size 1 are more than
+		// MAX_NUM_OF_CHUNKS,so they are merged into larger chunks.
+		for (int blockSize : new int[] { 1, 3, 1000, 7777 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(blockSize);
+			obj.setBufferSizePerWorker(128);
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = getFromUTF8("abca");
+			sc.numOfThreads = 3;
+
+			assertEquals(expected, obj.searchBigFile(sc));
+			assertEquals(expected.size(), obj.countBigFile(sc));
+			assertEquals(expected.get(0), obj.indexOf(srcFile, getFromUTF8("abca")));
+			assertEquals(expected.get(expected.size() - 1), obj.lastIndexOf(srcFile, getFromUTF8("abca")));
+		}
+	}
+
+	@Test
+	public void test_searchBigFileAsync() throws Exception {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final ExecutorService executorService = BigFileSearcher.newSharedExecutorService(2);
+
+		final BigFileSearcher obj = new BigFileSearcher();
+		obj.setUseOptimization(false);
+		obj.setBlockSize(64 * 1024);
+		obj.setBufferSizePerWorker(4 * 1024);
+		obj.setExecutorService(executorService);
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchBytes = searchBytes;
+		sc.numOfThreads = 2;
+
+		assertEquals(Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L), obj.searchBigFileAsync(sc).get());
+
+		sc.maxNumOfPointers = 3;
+		assertEquals(Arrays.asList(0L, 1022976L, 2045952L), obj.searchBigFileAsync(sc).get());
+		sc.maxNumOfPointers = -1;
+
+		// cancelling interrupts the workers and returns after they finish
+		final AtomicInteger numOfRunningWorkers = new AtomicInteger();
+		final AtomicInteger numOfInterruptedWorkers = new AtomicInteger();
+		final CountDownLatch workerStarted = new CountDownLatch(1);
+
+		final SearchCondition slowSc = new SearchCondition();
+		slowSc.srcFile = srcFile;
+		slowSc.searchBytes = searchBytes;
+		slowSc.numOfThreads = 2;
+		slowSc.searchEngine = new SearchEngine() {
+
+			@Override
+			public Matcher compile(final byte[] bytes) {
+
+				final Matcher matcher = new ScanSearchEngine().compile(bytes);
+
+				return new Matcher() {
+
+					@Override
+					public int indexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+						numOfRunningWorkers.incrementAndGet();
+						workerStarted.countDown();
+						try {
+							Thread.sleep(10000);
+						} catch (InterruptedException e) {
+							numOfInterruptedWorkers.incrementAndGet();
+							Thread.currentThread().interrupt();
+						} finally {
+							numOfRunningWorkers.decrementAndGet();
+						}
+						return matcher.indexOf(buf, fromIndex, toIndex);
+					}
+
+					@Override
+					public int lastIndexOf(ByteBuffer buf, int fromIndex, int toIndex) {
+						return matcher.lastIndexOf(buf, fromIndex, toIndex);
+					}
+
+					@Override
+					public int length() {
+						return matcher.length();
+					}
+				};
+			}
+		};
+
+		final CompletableFuture<List<Long>> future = obj.searchBigFileAsync(slowSc);
+		assertTrue(workerStarted.await(10, TimeUnit.SECONDS));
+		assertTrue(future.cancel(true));
+		assertTrue(future.isCancelled());
+		assertEquals(0, numOfRunningWorkers.get());
+		assertTrue(numOfInterruptedWorkers.get() > 0);
+
+		executorService.shutdown();
+		assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+
+		// failures are reported through the future
+		final SearchCondition notFound = new SearchCondition();
+		notFound.srcFile = new File(tempFolder.getRoot(), "not_found.bin");
+		notFound.searchBytes = searchBytes;
+
+		try {
+			new BigFileSearcher().searchBigFileAsync(notFound).get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof FileNotFoundException);
+		}
+	}
+
+	@Test
+	public void test_worker_failure_is_propagated() throws Exception {
+
+		final File unreadable = newUnreadableFile();
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = unreadable;
+		sc.searchBytes = getFromUTF8("a");
+		sc.numOfThreads = 2;
+
+		for (IoBackend ioBackend : IoBackend.values()) {
+
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setIoBackend(ioBackend);
+
+			try {
+				obj.searchBigFileAsync(sc).get();
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(ioBackend.name(), e.getCause() instanceof UncheckedIOException);
+			}
+
+			try {
+				obj.searchBigFile(sc);
+				fail();
+			} catch (RuntimeException e) {
+				assertTrue(ioBackend.name(), e.getCause() instanceof UncheckedIOException);
+			}
+		}
+	}
+
+	/**
+	 * Returns a directory pretending to be a file.It can be opened but not
+	 * read,so every worker fails while reading its block.
+	 */
+	private File newUnreadableFile() throws IOException {
+		return new File(tempFolder.newFolder("unreadable").getPath()) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public boolean isFile() {
+				return true;
+			}
+		};
+	}
+
+	@Test
+	public void test_concurrent_searches_on_one_instance() throws Exception {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<Long> expected = Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L);
+
+		final BigFileSearcher obj = new BigFileSearcher();
+		obj.setUseOptimization(false);
+		obj.setBlockSize(256 * 1024);
+		obj.setBufferSizePerWorker(16 * 1024);
+
+		final ExecutorService callers = Executors.newFixedThreadPool(4);
+		final List<Future<Float>> results = new ArrayList<Future<Float>>();
+
+		for (int i = 0; i < 8; i++) {
+			results.add(callers.submit(new Callable<Float>() {
+
+				@Override
+				public Float call() throws Exception {
+
+					final float[] lastProgress = new float[1];
+
+					// each search reports its own progress
+					final List<Long> result = obj.searchBigFile(srcFile, searchBytes, new OnProgressListener() {
+
+						@Override
+						public void onProgress(float progress) {
+							lastProgress[0] = progress;
+						}
+					});
+					assertEquals(expected, result);
+					return lastProgress[0];
+				}
+			}));
+		}
+		callers.shutdown();
+
+		for (Future<Float> result : results) {
+			assertEquals(1.0f, result.get(), 0.0001f);
+		}
+
+		// cancelling a search does not affect the other searches
+		final SearchCondition slowSc = new SearchCondition();
+		slowSc.srcFile = srcFile;
+		slowSc.searchBytes = searchBytes;
+		slowSc.numOfThreads = 1;
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchBytes = searchBytes;
+		sc.numOfThreads = 4;
+
+		final CompletableFuture<List<Long>> slowResult = obj.searchBigFileAsync(slowSc);
+		obj.cancel(slowSc);
+
+		assertEquals(expected, obj.searchBigFile(sc));
+		assertTrue(slowResult.get().size() < expected.size());
+	}
+
+	@Test
+	public void test_virtual_threads() throws Exception {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final BigFileSearcher obj = new BigFileSearcher();
+		obj.setUseOptimization(false);
+		obj.setBlockSize(256 * 1024);
+		obj.setUseVirtualThreads(true);
+
+		System.out.println("[" + name.getMethodName() + "] virtual threads available=" + BigFileSearcher.isVirtualThreadsAvailable());
+
+		// platform threads are used if virtual threads are not available
+		assertEquals(Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L), obj.searchBigFile(srcFile, searchBytes));
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchBytes = searchBytes;
+
+		assertEquals(7, obj.searchBigFileStream(sc).count());
+	}
+
+	@Test
+	public void test_file_mapping_cache() throws IOException {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<Long> expected = Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L);
+
+		final FileMappingCache cache = new FileMappingCache(1, 64 * 1024 * 1024);
+
+		final BigFileSearcher obj = new BigFileSearcher();
+		obj.setUseOptimization(false);
+		obj.setBlockSize(256 * 1024);
+		obj.setFileMappingCache(cache);
+
+		// the second search reuses the open file and the regions
+		assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+		final long mappedSize = cache.getMappedSize();
+		assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+		assertEquals(1, cache.getNumOfFiles());
+		assertEquals(mappedSize, cache.getMappedSize());
+		assertEquals(Long.valueOf(5242863L), obj.lastIndexOf(srcFile, searchBytes));
+
+		// the windows are found in the larger regions mapped before the smaller
+		// ones
+		obj.setBlockSize(1024 * 1024);
+		assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+		final long mappedSizeOfLargerRegions = cache.getMappedSize();
+		obj.setBlockSize(512 * 1024);
+		assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+		assertEquals(mappedSizeOfLargerRegions, cache.getMappedSize());
+		obj.setBlockSize(256 * 1024);
+
+		// a changed file is opened again
+		final File otherFile = tempFolder.newFile("cached.bin");
+		writeFile(otherFile, "hello world.");
+		assertEquals(Arrays.asList(0L), obj.searchBigFile(otherFile, searchBytes));
+		writeFile(otherFile, "hello world.hello world.");
+		assertEquals(Arrays.asList(0L, 12L), obj.searchBigFile(otherFile, searchBytes));
+
+		// the least recently used file is dropped
+		assertEquals(1, cache.getNumOfFiles());
+
+		final BinFileSearcher binFileSearcher = new BinFileSearcher();
+		binFileSearcher.setFileMappingCache(cache);
+		assertEquals(expected, binFileSearcher.search(srcFile, searchBytes));
+
+		cache.close();
+		assertEquals(0, cache.getNumOfFiles());
+		assertEquals(0, cache.getMappedSize());
+
+		// the cache can be used after closing
+		assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+		cache.close();
+
+		// the regions are evicted while the other workers are still using the
+		// file,each of them is unmapped when its last user releases it
+		final FileMappingCache smallCache = new FileMappingCache(1, 1024 * 1024);
+		obj.setFileMappingCache(smallCache);
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchBytes = searchBytes;
+		sc.numOfThreads = 4;
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(expected, obj.searchBigFile(sc));
+			assertTrue(smallCache.getMappedSize() <= 1024 * 1024);
+		}
+		smallCache.close();
+	}
+
+	@Test
+	public void test_io_backends() {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<Long> expected = Arrays.asList(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L);
+
+		final BigFileSearcher expectedObj = new BigFileSearcher();
+		final List<RegexMatch> expectedRegex = expectedObj.searchRegex(srcFile, "hello (?:world|there)\\.");
+
+		for (IoBackend ioBackend : IoBackend.values()) {
+
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(256 * 1024);
+			obj.setBufferSizePerWorker(64 * 1024);
+
+			// the backend of the condition overrides the backend of the searcher
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = searchBytes;
+			sc.ioBackend = ioBackend;
+			assertEquals(expected, obj.searchBigFile(sc));
+
+			obj.setIoBackend(ioBackend);
+			assertEquals(expected, obj.searchBigFile(srcFile, searchBytes));
+			assertEquals(Long.valueOf(5242863L), obj.lastIndexOf(srcFile, searchBytes));
+			assertEquals(expectedRegex, obj.searchRegex(srcFile, "hello (?:world|there)\\."));
+
+			final BinFileSearcher binFileSearcher = new BinFileSearcher();
+			binFileSearcher.setIoBackend(ioBackend);
+			assertEquals(expected, binFileSearcher.search(srcFile, searchBytes));
+		}
+	}
+
+	private static void writeFile(File f, String text) throws IOException {
+		final FileOutputStream fos = new FileOutputStream(f);
+		fos.write(text.getBytes(StandardCharsets.UTF_8));
+		fos.close();
+	}
+
+	@Test
+	public void test_count_exists_and_first_n() throws IOException {
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i % 7 == 0) ? 'b' : 'a');
+		}
+
+		final File srcFile = tempFolder.newFile("modes.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final List<Long> expected = new BinFileSearcher().search(srcFile, getFromUTF8("aaa"));
+
+		for (int numOfThreads : new int[] { 1, 3, 8 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBufferSizePerWorker(64);
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = getFromUTF8("aaa");
+			sc.numOfThreads = numOfThreads;
+
+			assertEquals(expected.size(), obj.countBigFile(sc));
+			assertEquals(true, obj.existsInBigFile(sc));
+
+			sc.maxNumOfPointers = 10;
+			assertEquals(expected.subList(0, 10), obj.searchBigFilePointers(sc).toList());
+
+			final LongStream stream = obj.searchBigFileStream(sc);
+			assertEquals(expected.subList(0, 10), stream.boxed().collect(Collectors.toList()));
+			stream.close();
+
+			sc.maxNumOfPointers = -1;
+			sc.searchBytes = getFromUTF8("bb");
+			assertEquals(0L, obj.countBigFile(sc));
+			assertEquals(false, obj.existsInBigFile(sc));
+		}
+	}
+
+	@Test
+	public void test_indexOf() {
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		for (int blockSize : new int[] { 1000, 100000, 10 * 1024 * 1024 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(blockSize);
+			obj.setMaxNumOfThreads(4);
+
+			assertEquals(0L, (long) obj.indexOf(srcFile, searchBytes));
+			assertEquals(1022976L, (long) obj.indexOf(srcFile, searchBytes, 1));
+			assertEquals(5242863L, (long) obj.indexOf(srcFile, searchBytes, 5114881L));
+			assertEquals(-1L, (long) obj.indexOf(srcFile, searchBytes, 5242864L));
+			assertEquals(-1L, (long) obj.indexOf(srcFile, getFromUTF8("ABCDEFG")));
+			assertEquals(-1L, (long) obj.indexOf(srcFile, searchBytes, srcFile.length()));
+		}
+	}
+
+	@Test
+	public void test_lastIndexOf() {
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		for (int blockSize : new int[] { 1000, 100000, 10 * 1024 * 1024 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(blockSize);
+			obj.setMaxNumOfThreads(4);
+
+			assertEquals(5242863L, (long) obj.lastIndexOf(srcFile, searchBytes));
+			assertEquals(5114880L, (long) obj.lastIndexOf(srcFile, searchBytes, 5242862L));
+			assertEquals(1022976L, (long) obj.lastIndexOf(srcFile, searchBytes, 1022976L));
+			assertEquals(0L, (long) obj.lastIndexOf(srcFile, searchBytes, 1022975L));
+			assertEquals(-1L, (long) obj.lastIndexOf(srcFile, getFromUTF8("ABCDEFG")));
+		}
+	}
+
+	@Test
+	public void test_searchBigFileReverseStream() throws IOException {
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ((i % 7 == 0) ? 'b' : 'a');
+		}
+
+		final File srcFile = tempFolder.newFile("reverse.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final List<Long> expected = new BinFileSearcher().search(srcFile, getFromUTF8("aaa"));
+		Collections.reverse(expected);
+
+		for (int blockSize : new int[] { 7, 999, 100000 }) {
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(blockSize);
+			obj.setMaxNumOfThreads(4);
+			obj.setBufferSizePerWorker(64);
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = getFromUTF8("aaa");
+
+			final LongStream stream = obj.searchBigFileReverseStream(sc);
+			assertEquals(expected, stream.boxed().collect(Collectors.toList()));
+			stream.close();
+
+			sc.maxNumOfPointers = 5;
+			final LongStream lastFive = obj.searchBigFileReverseStream(sc);
+			assertEquals(expected.subList(0, 5), lastFive.boxed().collect(Collectors.toList()));
+			lastFive.close();
+		}
+	}
+
+	@Test
+	public void test_search_pattern_with_mask() {
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		// "hello w??ld."
+		final BytePattern pattern = BytePattern.parse("68 65 6C 6C 6F 20 77 ?? ?? 6C 64 2E");
+
+		assertEquals(obj.searchBigFile(srcFile, getFromUTF8("hello world.")), obj.searchBigFile(srcFile, pattern));
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.searchPattern = BytePattern.parse("?? 65 6C 6C 6F 20 77 6F 72 6C 64 ??");
+		sc.numOfThreads = 4;
+
+		assertEquals(7, obj.countBigFile(sc));
+
+		final LongStream stream = obj.searchBigFileReverseStream(sc);
+		final List<Long> expected = obj.searchBigFile(srcFile, getFromUTF8("hello world."));
+		Collections.reverse(expected);
+		assertEquals(expected, stream.boxed().collect(Collectors.toList()));
+		stream.close();
+	}
+
+	/**
+	 * compare the results with java.util.regex using the patterns whose
+	 * greedy match is also the longest match
+	 */
+	@Test
+	public void test_searchRegex() throws IOException {
+
+		final Random rnd = new Random(2468);
+
+		final String alphabet = "abcdx0123 ";
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) alphabet.charAt(rnd.nextInt(alphabet.length()));
+		}
+
+		final File srcFile = tempFolder.newFile("regex.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final String text = new String(data, StandardCharsets.ISO_8859_1);
+
+		for (String regex : new String[] { "a[bc]+d", "[a-c]{2,5}x", "\\d+", "b(?:ab)*c|x\\x30", "[^ ]{4}" }) {
+
+			final List<RegexMatch> expected = new ArrayList<RegexMatch>();
+			final Matcher m = Pattern.compile(regex).matcher(text);
+			while (m.find()) {
+				expected.add(new RegexMatch(m.start(), m.end()));
+			}
+
+			assertEquals(expected, new BinFileSearcher().searchRegex(srcFile, regex));
+
+			for (int blockSize : new int[] { 10, 333, 100000 }) {
+				final BigFileSearcher obj = new BigFileSearcher();
+				obj.setUseOptimization(false);
+				obj.setBlockSize(blockSize);
+				obj.setMaxNumOfThreads(4);
+				obj.setBufferSizePerWorker(64);
+				assertEquals(regex + " blockSize=" + blockSize, expected, obj.searchRegex(srcFile, regex));
+			}
+
+			// the matches are inside the range of the condition
+			final List<RegexMatch> expectedInRange = new ArrayList<RegexMatch>();
+			final Matcher rangeMatcher = Pattern.compile(regex).matcher(text).region(1234, 17777);
+			while (rangeMatcher.find()) {
+				expectedInRange.add(new RegexMatch(rangeMatcher.start(), rangeMatcher.end()));
+			}
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.numOfThreads = 4;
+			sc.startPosition = 1234;
+			sc.endPosition = 17777;
+
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(333);
+			assertEquals(regex + " in range", expectedInRange, obj.searchRegex(sc, regex, -1));
+		}
+	}
+
+	@Test
+	public void test_searchText() throws IOException {
+
+		final Random rnd = new Random(8642);
+
+		final Object[][] cases = {
+				{ Charset.forName("Shift_JIS"), "\u30a2A\u30c3b\u30fc[\u8868\\\u30bd\uff71 ", new String[] { "Ab", "\\", "[", "\u30bd", "\uff71\u30c3" } },
+				{ Charset.forName("EUC-JP"), "\u30a2\u30a4\uff62\uff71a\u4e02\u3042 ", new String[] { "\u30a4", "\uff71\u30a2", "a", "\u4e02\u3042" } },
+				{ StandardCharsets.UTF_16, "ab\u3042\u4e9c\ud842\udf9f ", new String[] { "b", "\u4e9c", "\ud842\udf9f" } },
+				{ StandardCharsets.UTF_8, "ab\u00e9\u3042\ud842\udf9f ", new String[] { "b\u00e9", "\u3042", "\ud842\udf9f " } },
+		};
+
+		for (Object[] c : cases) {
+
+			final Charset charset = (Charset) c[0];
+			final String alphabet = (String) c[1];
+
+			final StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 3000; i++) {
+				final int index = rnd.nextInt(alphabet.length());
+				if (Character.isSurrogate(alphabet.charAt(index))) {
+					sb.append("\ud842\udf9f");
+				} else {
+					sb.append(alphabet.charAt(index));
+				}
+			}
+			final String text = sb.toString();
+
+			// "UTF-16" writes the byte order mark and big endian
+			final byte[] data = text.getBytes(charset);
+			final int bomLength = (charset == StandardCharsets.UTF_16) ? 2 : 0;
+			final Charset prefixCharset = (charset == StandardCharsets.UTF_16) ? StandardCharsets.UTF_16BE : charset;
+
+			final File srcFile = tempFolder.newFile("text_" + charset.name() + ".txt");
+			final FileOutputStream fos = new FileOutputStream(srcFile);
+			fos.write(data);
+			fos.close();
+
+			for (String query : (String[]) c[2]) {
+
+				final List<Long> expectedByteOffsets = new ArrayList<Long>();
+				final List<TextMatch> expected = new ArrayList<TextMatch>();
+
+				int index = text.indexOf(query);
+				while (index >= 0) {
+					final long byteOffset = bomLength + text.substring(0, index).getBytes(prefixCharset).length;
+					expectedByteOffsets.add(byteOffset);
+					expected.add(new TextMatch(byteOffset, index));
+					index = text.indexOf(query, index + 1);
+				}
+
+				for (int blockSize : new int[] { 7, 500, 100000 }) {
+					final BigFileSearcher obj = new BigFileSearcher();
+					obj.setUseOptimization(false);
+					obj.setBlockSize(blockSize);
+					obj.setMaxNumOfThreads(4);
+					obj.setBufferSizePerWorker(64);
+
+					final String message = charset.name() + " " + query + " blockSize=" + blockSize;
+					assertEquals(message, expectedByteOffsets, obj.searchText(srcFile, query, charset));
+					assertEquals(message, expected, obj.searchTextWithCharOffsets(srcFile, query, charset));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test_searchText_failure_is_propagated() throws IOException {
+
+		final File unreadable = newUnreadableFile();
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		// the char offsets are not returned when they cannot be counted
+		for (Charset charset : new Charset[] { StandardCharsets.UTF_8, StandardCharsets.UTF_16 }) {
+			try {
+				obj.searchTextWithCharOffsets(unreadable, "a", charset);
+				fail();
+			} catch (RuntimeException e) {
+				assertTrue(charset.name(), e instanceof UncheckedIOException || e.getCause() instanceof UncheckedIOException);
+			}
+		}
+	}
+
+	@Test
+	public void test_search_ignore_case() throws IOException {
+
+		final Random rnd = new Random(1357);
+
+		final String alphabet = "aAbBxX@`[{ ";
+
+		final byte[] data = new byte[20000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) alphabet.charAt(rnd.nextInt(alphabet.length()));
+		}
+
+		final File srcFile = tempFolder.newFile("ignore_case.bin");
+		final FileOutputStream fos = new FileOutputStream(srcFile);
+		fos.write(data);
+		fos.close();
+
+		final String lowerText = new String(data, StandardCharsets.ISO_8859_1).toLowerCase();
+
+		for (String keyword : new String[] { "ab", "bAx", "a@b", "xx a" }) {
+
+			final List<Long> expected = new ArrayList<Long>();
+			for (int i = lowerText.indexOf(keyword.toLowerCase()); i >= 0; i = lowerText.indexOf(keyword.toLowerCase(), i + 1)) {
+				expected.add((long) i);
+			}
+
+			final BigFileSearcher obj = new BigFileSearcher();
+			obj.setUseOptimization(false);
+			obj.setBlockSize(1000);
+			obj.setMaxNumOfThreads(4);
+
+			final SearchCondition sc = new SearchCondition();
+			sc.srcFile = srcFile;
+			sc.searchBytes = getFromUTF8(keyword);
+			sc.numOfThreads = 4;
+			sc.ignoreCase = true;
+
+			assertEquals(keyword, expected, obj.searchBigFile(sc));
+
+			final LongStream stream = obj.searchBigFileReverseStream(sc);
+			final List<Long> reversed = new ArrayList<Long>(expected);
+			Collections.reverse(reversed);
+			assertEquals(keyword, reversed, stream.boxed().collect(Collectors.toList()));
+			stream.close();
+		}
+	}
+
+	@Test
+	public void test_searchBigFilePointers() {
+
+		final byte[] searchBytes = getFromUTF8("hello world.");
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final PointerList result = obj.searchBigFilePointers(srcFile, searchBytes);
+
+		assertArrayEquals(new long[] { 0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L }, result.toArray());
+		assertEquals(7, result.stream().count());
+		assertEquals(obj.searchBigFile(srcFile, searchBytes), result.toList());
+	}
+
+	@Test
+	public void test_searchBigFileStream() {
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+		sc.searchBytes = getFromUTF8("hello world.");
+
+		final LongStream stream = obj.searchBigFileStream(sc);
+		assertArrayEquals(new long[] { 0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L }, stream.toArray());
+		stream.close();
+
+		sc.startPosition = 2040000L;
+		final LongStream streamFromMid = obj.searchBigFileStream(sc);
+		assertArrayEquals(new long[] { 2045952L, 3068928L, 4091904L, 5114880L, 5242863L }, streamFromMid.toArray());
+		streamFromMid.close();
+	}
+
+	@Test
+	public void test_searchBigFileIterator_close_before_end() {
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+		sc.searchBytes = getFromUTF8("hello world.");
+
+		final PointerIterator iterator = obj.searchBigFileIterator(sc);
+
+		assertTrue(iterator.hasNext());
+		assertEquals(0L, iterator.nextLong());
+		assertEquals(1022976L, iterator.nextLong());
+
+		iterator.close();
+
+		assertFalse(iterator.hasNext());
+	}
+
+	@Test
+	public void test_search_multiple_patterns() {
+
+		final BigFileSearcher obj = new BigFileSearcher();
+
+		final File srcFile = getFileFromResource("bigdoc_bigfile_test_5mbyte.bin");
+
+		final List<byte[]> searchBytesList = Arrays.asList(getFromUTF8("hello world."), getFromUTF8("world"), getFromUTF8("o"), getFromUTF8("rejoice"), getFromUTF8("hello world."));
+
+		final List<List<Long>> result = obj.searchBigFile(srcFile, searchBytesList);
+
+		assertEquals(searchBytesList.size(), result.size());
+		assertThat(result.get(0), contains(0L, 1022976L, 2045952L, 3068928L, 4091904L, 5114880L, 5242863L));
+		assertThat(result.get(1), contains(6L, 1022982L, 2045958L, 3068934L, 4091910L, 5114886L, 5242869L));
+		assertEquals(14, result.get(2).size());
+		assertEquals(0, result.get(3).size());
+		assertEquals(result.get(0), result.get(4));
+
+		for (int i = 0; i < searchBytesList.size(); i++) {
+			assertEquals(new BigFileSearcher().searchBigFile(srcFile, searchBytesList.get(i)), result.get(i));
+		}
+
+		// the range of the condition is split into the chunks of the block size
+		final BigFileSearcher rangeSearcher = new BigFileSearcher();
+		rangeSearcher.setUseOptimization(false);
+		rangeSearcher.setBlockSize(64 * 1024);
+
+		final SearchCondition sc = new SearchCondition();
+		sc.srcFile = srcFile;
+		sc.numOfThreads = 3;
+		sc.startPosition = 1022976;
+		sc.endPosition = 4091915;
+
+		final List<PointerList> rangeResult = rangeSearcher.searchBigFilePointers(sc, searchBytesList);
+
+		assertThat(rangeResult.get(0).toList(), contains(1022976L, 2045952L, 3068928L));
+		assertThat(rangeResult.get(1).toList(), contains(1022982L, 2045958L, 3068934L, 4091910L));
+		assertEquals(0, rangeResult.get(3).size());
+	}
+
 	@Test
 	public void test_cancel() throws InterruptedException {
     final String searchText = "hello world.";
@@ -27,14 +27,31 @@ import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.riversun.bigdoc.bin.BinFileSearcher;
+import org.riversun.bigdoc.bin.BinFileSearcher.BinFileProgressListener;
+import org.riversun.bigdoc.bin.BytePattern;
+import org.riversun.bigdoc.bin.IoBackend;
+import org.riversun.bigdoc.bin.RegexMatch;
 
 /**
  * test for BigFileSearcher
@@ -47,6 +64,9 @@ public class TestBinFileSearcher extends TestBase {
 	private static final long FIRST_OCCURENCE = 15199L;// 15667L as CRLF;
 	private static final long SECOND_OCCURENCE = 159845L;// 164920L as CRLF;
 
+	@Rule
+	public TemporaryFolder tempFolder = new TemporaryFolder();
+
 	@Before
 	public void setUp() throws Exception {
 	}
@@ -105,6 +125,124 @@ public class TestBinFileSearcher extends TestBase {
 
 	}
 
+	/**
+	 * check whether the buffers reused from the pool give the same results
+	 * for every backend and buffer size
+	 */
+	@Test
+	public void test_search_with_pooled_buffers() {
+
+		final byte[] searchBytes = getFromUTF8("rejoice");
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		int[] bufSizes = { 100, 101, 1024, 1000, 4096, 100 };
+
+		for (IoBackend ioBackend : IoBackend.values()) {
+			for (int bufSize : bufSizes) {
+				final BinFileSearcher obj = new BinFileSearcher();
+				obj.setIoBackend(ioBackend);
+				obj.setBufferSize(bufSize);
+				assertThat(obj.search(file, searchBytes), contains(FIRST_OCCURENCE, SECOND_OCCURENCE));
+			}
+		}
+	}
+
+	/**
+	 * check whether the stale bytes of a pooled buffer are not searched when
+	 * the file is truncated while it is searched
+	 */
+	@Test
+	public void test_read_past_end_of_file() throws IOException {
+
+		final byte[] searchBytes = getFromUTF8("rejoice");
+
+		final File file = tempFolder.newFile("truncated.bin");
+		final FileOutputStream fos = new FileOutputStream(file);
+		fos.write(new byte[4096]);
+		fos.close();
+
+		final BinFileSearcher obj = new BinFileSearcher();
+		obj.setIoBackend(IoBackend.PREAD);
+		obj.setBufferSize(1024);
+
+		// fill the pooled buffer with the bytes to be searched
+		assertThat(obj.search(getFileFromResource("Coriolanus.txt"), searchBytes), contains(FIRST_OCCURENCE, SECOND_OCCURENCE));
+
+		// truncate the file after the first window
+		obj.setBigFileProgressListener(new BinFileProgressListener() {
+
+			@Override
+			public void onProgress(List<Long> pointerList, float progress, float currentPosition, float startPosition, long maxSizeToRead) {
+				try {
+					final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+					raf.setLength(1500);
+					raf.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+
+		try {
+			obj.search(file, searchBytes);
+			fail();
+		} catch (UncheckedIOException e) {
+			assertTrue(e.getCause() instanceof EOFException);
+		}
+	}
+
+	/**
+	 * check whether the occurrences straddling between the mapped windows are
+	 * found exactly once
+	 */
+	@Test
+	public void test_search_across_window_edges() {
+
+		final String testText = "rejoice";
+
+		final byte[] searchBytes = getFromUTF8(testText);
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		int[] bufSizes = { 100, 101, 103, 1024, 1024 * 4 };
+
+		for (int bufSize : bufSizes) {
+			final BinFileSearcher obj = new BinFileSearcher();
+			obj.setBufferSize(bufSize);
+			assertThat(obj.search(file, searchBytes), contains(FIRST_OCCURENCE, SECOND_OCCURENCE));
+		}
+	}
+
+	/**
+	 * check whether the results do not change when the windows slide across
+	 * the regions mapped at once
+	 */
+	@Test
+	public void test_search_across_region_edges() {
+
+		final byte[] searchBytes = getFromUTF8("the");
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		final BinFileSearcher expectedObj = new BinFileSearcher();
+		expectedObj.setBufferSize(1024);
+		final List<Long> expected = expectedObj.search(file, searchBytes);
+		final List<Long> expectedReverse = expectedObj.searchPointersReverse(file, searchBytes).toList();
+		final List<List<Long>> expectedMulti = expectedObj.search(file, Arrays.asList(searchBytes, getFromUTF8("rejoice")));
+		final List<RegexMatch> expectedRegex = expectedObj.searchRegex(file, "[Rr]ejoic(?:e|ing)");
+
+		for (int regionSize : new int[] { 1, 1024, 1025, 3000, 4096 }) {
+			final BinFileSearcher obj = new BinFileSearcher();
+			obj.setBufferSize(1024);
+			obj.setRegionSize(regionSize);
+			assertEquals(expected, obj.search(file, searchBytes));
+			assertEquals(expectedReverse, obj.searchPointersReverse(file, searchBytes).toList());
+			assertEquals(expectedMulti, obj.search(file, Arrays.asList(searchBytes, getFromUTF8("rejoice"))));
+			assertEquals(expectedRegex, obj.searchRegex(file, "[Rr]ejoic(?:e|ing)"));
+		}
+	}
+
 	@Test
 	public void test_searchPartially_from_firstPosOfFile() {
 		final String testText = "rejoice";
@@ -305,4 +443,114 @@ public class TestBinFileSearcher extends TestBase {
 
 		assertEquals((long) result, SECOND_OCCURENCE);
 	}
+
+	@Test
+	public void test_count() {
+
+		final byte[] searchBytes = getFromUTF8("rejoice");
+
+		final BinFileSearcher obj = new BinFileSearcher();
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		assertEquals(obj.search(file, searchBytes).size(), obj.count(file, searchBytes));
+		assertEquals(0L, obj.count(file, getFromUTF8("ABCDEFG")));
+	}
+
+	@Test
+	public void test_lastIndexOf() {
+
+		final byte[] searchBytes = getFromUTF8("rejoice");
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		final List<Long> expected = new BinFileSearcher().search(file, searchBytes);
+
+		for (int bufferSize : new int[] { 100, 101, 4096, BinFileSearcher.DEFAULT_BUFFER_SIZE }) {
+			final BinFileSearcher obj = new BinFileSearcher();
+			obj.setBufferSize(bufferSize);
+
+			assertEquals(expected.get(expected.size() - 1), obj.lastIndexOf(file, searchBytes));
+			assertEquals(expected.get(0), obj.lastIndexOf(file, searchBytes, expected.get(1) - 1));
+			assertEquals(expected.get(1), obj.lastIndexOf(file, searchBytes, expected.get(1)));
+			assertEquals(-1L, (long) obj.lastIndexOf(file, searchBytes, expected.get(0) - 1));
+
+			final List<Long> reversed = new ArrayList<Long>(expected);
+			Collections.reverse(reversed);
+			assertEquals(reversed, obj.searchPointersReverse(file, searchBytes).toList());
+		}
+	}
+
+	@Test
+	public void test_parse_pattern() {
+
+		final BytePattern pattern = BytePattern.parse("4d 5A ?? ??5045 4?");
+
+		assertEquals(7, pattern.length());
+		assertEquals("4D 5A ?? ?? 50 45 4?", pattern.toString());
+		assertEquals((byte) 0xf0, pattern.getMask()[6]);
+	}
+
+	/**
+	 * compare the results with the naive search using patterns with wildcards
+	 */
+	@Test
+	public void test_search_pattern_with_mask() throws IOException {
+
+		final Random rnd = new Random(4321);
+
+		final byte[] data = new byte[3000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) ('a' + rnd.nextInt(3));
+		}
+
+		final File file = tempFolder.newFile("masked.bin");
+		final FileOutputStream fos = new FileOutputStream(file);
+		fos.write(data);
+		fos.close();
+
+		final BinFileSearcher obj = new BinFileSearcher();
+		obj.setBufferSize(100);
+
+		for (int n = 0; n < 100; n++) {
+
+			final byte[] bytes = new byte[1 + rnd.nextInt(8)];
+			final byte[] mask = new byte[bytes.length];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) ('a' + rnd.nextInt(3));
+				mask[i] = rnd.nextInt(3) == 0 ? 0 : (byte) 0xff;
+			}
+
+			final List<Long> expected = new ArrayList<Long>();
+			for (int i = 0; i <= data.length - bytes.length; i++) {
+				int j = 0;
+				while (j < bytes.length && (data[i + j] & mask[j]) == (bytes[j] & mask[j])) {
+					j++;
+				}
+				if (j == bytes.length) {
+					expected.add((long) i);
+				}
+			}
+
+			assertEquals(expected, obj.search(file, BytePattern.of(bytes, mask)));
+		}
+	}
+
+	@Test
+	public void test_searchRegex() {
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		final BinFileSearcher obj = new BinFileSearcher();
+
+		final List<RegexMatch> result = obj.searchRegex(file, "[Rr]ejoic(?:e|ing)");
+
+		assertEquals(obj.search(file, getFromUTF8("rejoice")).get(0), (Long) result.get(0).getStart());
+		assertEquals(7, result.get(0).length());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void test_searchRegex_matching_empty_sequence() {
+		new BinFileSearcher().searchRegex(getFileFromResource("Coriolanus.txt"), "a*");
+	}
 }
@@ -0,0 +1,220 @@
+/*  bigdoc Java lib for easy to read/search from a big document
+ *
+ *  Copyright (c) 2006-2016 Tom Misawa, riversun.org@gmail.com
+ *  
+ *  Permission is hereby granted, free of charge, to any person obtaining a
+ *  copy of this software and associated documentation files (the "Software"),
+ *  to deal in the Software without restriction, including without limitation
+ *  the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ *  and/or sell copies of the Software, and to permit persons to whom the
+ *  Software is furnished to do so, subject to the following conditions:
+ *  
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *  
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ *  FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ *  DEALINGS IN THE SOFTWARE.
+ *  
+ */
+package org.riversun.bigdoc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+import org.riversun.bigdoc.bin.AutoSearchEngine;
+import org.riversun.bigdoc.bin.BigFileSearcher;
+import org.riversun.bigdoc.bin.BinFileSearcher;
+import org.riversun.bigdoc.bin.HorspoolSearchEngine;
+import org.riversun.bigdoc.bin.ScanSearchEngine;
+import org.riversun.bigdoc.bin.SearchEngine;
+import org.riversun.bigdoc.bin.SwarSearchEngine;
+import org.riversun.bigdoc.bin.TwoWaySearchEngine;
+
+/**
+ * test for SearchEngine implementations
+ *
+ * @author Tom Misawa (riversun.org@gmail.com)
+ *
+ */
+public class TestSearchEngine extends TestBase {
+
+	private final SearchEngine[] engines = { new ScanSearchEngine(), new SwarSearchEngine(), new HorspoolSearchEngine(), new TwoWaySearchEngine(), new AutoSearchEngine() };
+
+	@Test
+	public void test_indexOf_text() {
+
+		final ByteBuffer buf = ByteBuffer.wrap(getFromUTF8("abcabdabcabcabd rejoice, rejoice"));
+
+		for (SearchEngine engine : engines) {
+			assertEquals(3, engine.compile(getFromUTF8("abdabcabc")).indexOf(buf, 0, buf.capacity()));
+			assertEquals(16, engine.compile(getFromUTF8("rejoice")).indexOf(buf, 0, buf.capacity()));
+			assertEquals(25, engine.compile(getFromUTF8("rejoice")).indexOf(buf, 17, buf.capacity()));
+			assertEquals(-1, engine.compile(getFromUTF8("rejoice")).indexOf(buf, 17, buf.capacity() - 1));
+			assertEquals(-1, engine.compile(getFromUTF8("ABCDEFG")).indexOf(buf, 0, buf.capacity()));
+		}
+	}
+
+	/**
+	 * compare the results with the naive search using small alphabets,which
+	 * produce a lot of periodic patterns
+	 */
+	@Test
+	public void test_indexOf_random() {
+
+		final Random rnd = new Random(1234);
+
+		for (int n = 0; n < 2000; n++) {
+
+			final int alphabetSize = 1 + rnd.nextInt(3);
+
+			final byte[] text = new byte[rnd.nextInt(200)];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final byte[] pattern = new byte[1 + rnd.nextInt(12)];
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final ByteBuffer buf = ByteBuffer.wrap(text);
+			final int fromIndex = text.length == 0 ? 0 : rnd.nextInt(text.length);
+
+			for (SearchEngine engine : engines) {
+				assertEquals(naiveIndexOf(text, pattern, fromIndex), engine.compile(pattern).indexOf(buf, fromIndex, text.length));
+			}
+		}
+	}
+
+	@Test
+	public void test_lastIndexOf_random() {
+
+		final Random rnd = new Random(5678);
+
+		for (int n = 0; n < 2000; n++) {
+
+			final int alphabetSize = 1 + rnd.nextInt(3);
+
+			final byte[] text = new byte[rnd.nextInt(200)];
+			for (int i = 0; i < text.length; i++) {
+				text[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final byte[] pattern = new byte[1 + rnd.nextInt(12)];
+			for (int i = 0; i < pattern.length; i++) {
+				pattern[i] = (byte) ('a' + rnd.nextInt(alphabetSize));
+			}
+
+			final ByteBuffer buf = ByteBuffer.wrap(text);
+			final int fromIndex = text.length == 0 ? 0 : rnd.nextInt(text.length);
+			final int toIndex = fromIndex + rnd.nextInt(text.length - fromIndex + 1);
+
+			for (SearchEngine engine : engines) {
+				assertEquals(naiveLastIndexOf(text, pattern, fromIndex, toIndex), engine.compile(pattern).lastIndexOf(buf, fromIndex, toIndex));
+			}
+		}
+	}
+
+	/**
+	 * check whether the position of the candidate is correct regardless of the
+	 * byte order of the buffer
+	 */
+	@Test
+	public void test_indexOf_swar_byteOrder() {
+
+		final byte[] text = getFromUTF8("xxxxxxxxxxhello world.xxxxhello world.xx");
+		final SearchEngine.Matcher matcher = new SwarSearchEngine().compile(getFromUTF8("hello world."));
+
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+			final ByteBuffer buf = ByteBuffer.wrap(text).order(order);
+			assertEquals(10, matcher.indexOf(buf, 0, text.length));
+			assertEquals(26, matcher.indexOf(buf, 11, text.length));
+			assertEquals(-1, matcher.indexOf(buf, 27, text.length));
+			assertEquals(26, matcher.lastIndexOf(buf, 0, text.length));
+			assertEquals(10, matcher.lastIndexOf(buf, 0, 37));
+			assertEquals(-1, matcher.lastIndexOf(buf, 11, 37));
+		}
+	}
+
+	/**
+	 * check that an empty sequence is rejected before it reaches the
+	 * engines
+	 */
+	@Test
+	public void test_compile_empty() {
+
+		for (SearchEngine engine : engines) {
+			for (byte[] searchBytes : new byte[][] { null, new byte[0] }) {
+				try {
+					engine.compile(searchBytes);
+					fail();
+				} catch (IllegalArgumentException e) {
+				}
+			}
+		}
+
+		final File file = getFileFromResource("Coriolanus.txt");
+
+		try {
+			new BigFileSearcher().searchBigFile(file, new byte[0]);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			new BigFileSearcher().indexOf(file, new byte[0]);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			new BigFileSearcher().lastIndexOf(file, new byte[0], 0);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			new BinFileSearcher().indexOf(file, new byte[0]);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	private int naiveIndexOf(byte[] text, byte[] pattern, int fromIndex) {
+		for (int i = fromIndex; i <= text.length - pattern.length; i++) {
+			int j = 0;
+			while (j < pattern.length && text[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int naiveLastIndexOf(byte[] text, byte[] pattern, int fromIndex, int toIndex) {
+		for (int i = toIndex - pattern.length; i >= fromIndex; i--) {
+			int j = 0;
+			while (j < pattern.length && text[i + j] == pattern[j]) {
+				j++;
+			}
+			if (j == pattern.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}